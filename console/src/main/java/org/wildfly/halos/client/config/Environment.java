@@ -24,15 +24,29 @@ public class Environment {
 
     public final Version version;
     public final boolean cors;
+    public final boolean binaryDmr;
+    public final boolean batchOperations;
+    public final int batchWindow;
     public final String proxyUrl;
     public final String restVersion;
+    public final int resourceDescriptionCacheSize;
+    public final int securityContextCacheSize;
+    public final boolean persistentMetadata;
     public AccessControlProvider accessControlProvider;
 
     @Inject
     public Environment() {
         this.cors = Boolean.parseBoolean(System.getProperty("halos.cors", "true"));
+        this.binaryDmr = Boolean.parseBoolean(System.getProperty("halos.binary.dmr", "true"));
+        this.batchOperations = Boolean.parseBoolean(System.getProperty("halos.dispatcher.batch", "false"));
+        this.batchWindow = Integer.parseInt(System.getProperty("halos.dispatcher.batch.window", "0"));
         this.proxyUrl = System.getProperty("halos.proxy.url", "http://localhost:8080");
         this.restVersion = System.getProperty("halos.rest.version", "v1");
+        this.resourceDescriptionCacheSize = Integer.parseInt(
+                System.getProperty("halos.cache.resource-descriptions", "250"));
+        this.securityContextCacheSize = Integer.parseInt(
+                System.getProperty("halos.cache.security-contexts", "300"));
+        this.persistentMetadata = Boolean.parseBoolean(System.getProperty("halos.cache.persistent", "true"));
         this.version = Version.parseVersion(System.getProperty("halos.version", "0.0.1"));
         this.accessControlProvider = AccessControlProvider.SIMPLE;
     }
@@ -2,6 +2,7 @@ package org.wildfly.halos.client.core;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import javax.inject.Singleton;
 
@@ -24,10 +25,12 @@ public class CoreStatementContext implements StatementContext {
 
     private final Map<String, Placeholder> placeholders;
     private final Map<Placeholder, String> values;
+    private final Map<String, Integer> versions;
 
     public CoreStatementContext() {
         placeholders = new HashMap<>();
         values = new HashMap<>();
+        versions = new HashMap<>();
         add(SELECTED_RESOURCE);
         add(SELECTED_DEPLOYMENT);
     }
@@ -61,7 +64,10 @@ public class CoreStatementContext implements StatementContext {
 
     @Override
     public void add(Placeholder placeholder) {
-        placeholders.put(placeholder.name, placeholder);
+        Placeholder previous = placeholders.put(placeholder.name, placeholder);
+        if (previous != null && !previous.equals(placeholder)) {
+            changed(placeholder.name);
+        }
     }
 
     @Override
@@ -73,10 +79,22 @@ public class CoreStatementContext implements StatementContext {
     public void assign(String placeholder, String value) {
         Placeholder p = placeholders.get(placeholder);
         if (p != null) {
-            values.put(p, value);
+            String previous = values.put(p, value);
+            if (!Objects.equals(previous, value)) {
+                changed(placeholder);
+            }
         }
     }
 
+    @Override
+    public int version(String placeholder) {
+        return versions.getOrDefault(placeholder, 0);
+    }
+
+    private void changed(String placeholder) {
+        versions.merge(placeholder, 1, Integer::sum);
+    }
+
     @Override
     public String value(Placeholder placeHolder) {
         return values.get(placeHolder);
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.halos.client.dmr;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The map behind {@link ObjectModelValue}. Most objects in DMR payloads have only a few keys. For those the entries
+ * are stored in two arrays and looked up linearly, which needs much less memory than a {@link LinkedHashMap}. Once the
+ * map grows beyond {@link #THRESHOLD} entries it switches to a {@link LinkedHashMap}. In both cases the iteration
+ * order is the insertion order.
+ */
+class CompactObjectMap extends AbstractMap<String, ModelNode> {
+
+    static final int THRESHOLD = 16;
+
+    private String[] keys;
+    private ModelNode[] values;
+    private int size;
+    private LinkedHashMap<String, ModelNode> map;
+
+    CompactObjectMap() {
+        this(4);
+    }
+
+    CompactObjectMap(int expectedSize) {
+        if (expectedSize > THRESHOLD) {
+            this.map = new LinkedHashMap<>();
+        } else {
+            this.keys = new String[Math.max(1, expectedSize)];
+            this.values = new ModelNode[Math.max(1, expectedSize)];
+        }
+        this.size = 0;
+    }
+
+    @Override
+    public int size() {
+        return map != null ? map.size() : size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map != null ? map.containsKey(key) : indexOf(key) != -1;
+    }
+
+    @Override
+    public ModelNode get(Object key) {
+        if (map != null) {
+            return map.get(key);
+        }
+        int index = indexOf(key);
+        return index != -1 ? values[index] : null;
+    }
+
+    @Override
+    public ModelNode put(String key, ModelNode value) {
+        if (map != null) {
+            return map.put(key, value);
+        }
+        int index = indexOf(key);
+        if (index != -1) {
+            ModelNode old = values[index];
+            values[index] = value;
+            return old;
+        }
+        if (size == THRESHOLD) {
+            map = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                map.put(keys[i], values[i]);
+            }
+            keys = null;
+            values = null;
+            size = 0;
+            return map.put(key, value);
+        }
+        if (size == keys.length) {
+            int capacity = Math.min(THRESHOLD, size * 2);
+            String[] newKeys = new String[capacity];
+            ModelNode[] newValues = new ModelNode[capacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public ModelNode remove(Object key) {
+        if (map != null) {
+            return map.remove(key);
+        }
+        int index = indexOf(key);
+        return index != -1 ? removeAt(index) : null;
+    }
+
+    @Override
+    public void clear() {
+        if (map != null) {
+            map.clear();
+        } else {
+            for (int i = 0; i < size; i++) {
+                keys[i] = null;
+                values[i] = null;
+            }
+            size = 0;
+        }
+    }
+
+    @Override
+    public Set<Entry<String, ModelNode>> entrySet() {
+        return new EntrySet();
+    }
+
+    // ------------------------------------------------------ internals
+
+    private int indexOf(Object key) {
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private ModelNode removeAt(int index) {
+        ModelNode old = values[index];
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        return old;
+    }
+
+    /** Live view which works in both modes, even if the map switches to a hash map in between. */
+    private class EntrySet extends AbstractSet<Entry<String, ModelNode>> {
+
+        @Override
+        public Iterator<Entry<String, ModelNode>> iterator() {
+            if (map != null) {
+                return map.entrySet().iterator();
+            }
+            return new Iterator<Entry<String, ModelNode>>() {
+                private int next = 0;
+                private int last = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Entry<String, ModelNode> next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next++;
+                    return new ArrayEntry(last);
+                }
+
+                @Override
+                public void remove() {
+                    if (last == -1) {
+                        throw new IllegalStateException();
+                    }
+                    removeAt(last);
+                    next = last;
+                    last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return CompactObjectMap.this.size();
+        }
+    }
+
+    private class ArrayEntry implements Map.Entry<String, ModelNode> {
+
+        private final int index;
+
+        ArrayEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public ModelNode getValue() {
+            return values[index];
+        }
+
+        @Override
+        public ModelNode setValue(ModelNode value) {
+            ModelNode old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+            return getKey().equals(that.getKey()) &&
+                    (getValue() == null ? that.getValue() == null : getValue().equals(that.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ (getValue() == null ? 0 : getValue().hashCode());
+        }
+    }
+}
@@ -17,154 +17,211 @@ package org.wildfly.halos.client.dmr;
 
 import elemental2.core.ArrayBuffer;
 import elemental2.core.DataView;
-import elemental2.core.Int8Array;
-
+import elemental2.core.Uint8Array;
+
+/**
+ * Reads DMR data from an array buffer. All values are read through a single {@link DataView}, so reading numbers
+ * doesn't allocate any temporary buffers.
+ * <p>
+ * Object keys and property names are read using {@link #readKey()}, which interns them in a small table: Keys like
+ * {@code description}, {@code type} or {@code nillable} repeat many thousand times in r-r-d payloads, but are
+ * decoded and allocated only once per data input.
+ */
 class DataInput {
 
-    private final byte[] bytes;
-    private int pos = 0;
+    private static final int KEY_TABLE_SIZE = 512; // must be a power of two
+    private static final int MAX_KEY_LENGTH = 64;
 
-    DataInput(byte[] bytes) {
-        this.bytes = bytes;
+    /** Creates a data input from a binary string, as returned by {@code atob()}. */
+    static DataInput fromBinaryString(String binary) {
+        int length = binary.length();
+        Uint8Array bytes = new Uint8Array(length);
+        for (int i = 0; i < length; i++) {
+            bytes.setAt(i, (double) (binary.charAt(i) & 0xFF));
+        }
+        return new DataInput(bytes.buffer);
     }
 
-    // ------------------------------------------------------ read a-z
+    private final DataView view;
+    private final int length;
+    private int pos = 0;
+    private String[] keys;
 
-    private int read() {
-        if (pos >= bytes.length) {
-            return -1;
-        }
-        return bytes[pos++] & 0xFF;
+    /** Reads directly from the specified buffer w/o copying. */
+    DataInput(ArrayBuffer buffer) {
+        this.view = new DataView(buffer);
+        this.length = (int) buffer.byteLength;
     }
 
+    // ------------------------------------------------------ read a-z
+
     boolean readBoolean() {
         return readByte() != 0;
     }
 
     byte readByte() {
-        int i = read();
-        if (i == -1) {
-            throw new RuntimeException("EOF");
-        }
-        return (byte) i;
+        require(1);
+        return (byte) view.getInt8(pos++);
     }
 
     char readChar() {
-        int a = readUnsignedByte();
-        int b = readUnsignedByte();
-        return (char) ((a << 8) | b);
+        require(2);
+        char c = (char) view.getUint16(pos);
+        pos += 2;
+        return c;
     }
 
     double readDouble() {
-        byte[] doubleBytes = new byte[8];
-        readFully(doubleBytes);
-
-        ArrayBuffer buffer = new ArrayBuffer(8);
-        Int8Array array = new Int8Array(buffer);
-        DataView view = new DataView(buffer);
-        for (int i = 0; i < doubleBytes.length; i++) {
-            array.setAt(i, (double) doubleBytes[i]);
-        }
-        return view.getFloat64(0);
+        require(8);
+        double d = view.getFloat64(pos);
+        pos += 8;
+        return d;
     }
 
     void readFully(byte[] b) {
+        require(b.length);
         for (int i = 0; i < b.length; i++) {
-            b[i] = bytes[pos++];
+            b[i] = (byte) view.getInt8(pos++);
         }
     }
 
     int readInt() {
-        int a = readUnsignedByte();
-        int b = readUnsignedByte();
-        int c = readUnsignedByte();
-        int d = readUnsignedByte();
-        return (a << 24) | (b << 16) | (c << 8) | d;
+        require(4);
+        int i = (int) view.getInt32(pos);
+        pos += 4;
+        return i;
     }
 
     long readLong() {
-        byte[] longBytes = new byte[8];
-        readFully(longBytes);
-
-        return (((long) longBytes[0] << 56) +
-                ((long) (longBytes[1] & 255) << 48) +
-                ((long) (longBytes[2] & 255) << 40) +
-                ((long) (longBytes[3] & 255) << 32) +
-                ((long) (longBytes[4] & 255) << 24) +
-                ((longBytes[5] & 255) << 16) +
-                ((longBytes[6] & 255) << 8) +
-                ((longBytes[7] & 255) << 0));
-
+        require(8);
+        long high = (long) view.getInt32(pos);
+        long low = (long) view.getUint32(pos + 4);
+        pos += 8;
+        return (high << 32) | low;
     }
 
     short readShort() {
-        int a = readUnsignedByte();
-        int b = readUnsignedByte();
-        return (short) ((a << 8) | b);
-    }
-
-    private int readUnsignedByte() {
-        int i = read();
-        if (i == -1) {
-            throw new RuntimeException("EOF");
-        }
-        return i;
+        require(2);
+        short s = (short) view.getInt16(pos);
+        pos += 2;
+        return s;
     }
 
     private int readUnsignedShort() {
-        int a = readUnsignedByte();
-        int b = readUnsignedByte();
-        return ((a << 8) | b);
+        require(2);
+        int s = (int) view.getUint16(pos);
+        pos += 2;
+        return s;
     }
 
     String readUTF() {
         int bytes = readUnsignedShort();
-        StringBuilder sb = new StringBuilder();
-
-        while (bytes > 0) {
-            bytes -= readUTFChar(sb);
+        require(bytes);
+        int end = pos + bytes;
+        // a byte never decodes to more than one char, malformed sequences may read two bytes past the end
+        char[] chars = new char[bytes + 2];
+        int count = 0;
+
+        // fast path: most DMR strings are plain ASCII
+        while (pos < end) {
+            int a = (int) view.getUint8(pos);
+            if (a >= 0x80) {
+                break;
+            }
+            chars[count++] = (char) a;
+            pos++;
         }
 
-        return sb.toString();
-    }
-
-    private int readUTFChar(StringBuilder sb) {
-        int a = readUnsignedByte();
-        if (a < 0x80) {
-            sb.append((char) a);
-            return 1;
-        } else if (a < 0xc0) {
-            sb.append('?');
-            return 1;
-        } else if (a < 0xe0) {
-            int b = readUnsignedByte();
-            if ((b & 0xc0) != 0x80) {
-                sb.append('?');
-                // probably a US-ASCII char after a Latin-1 char
-                sb.append((char) b);
+        while (pos < end) {
+            int a = (int) view.getUint8(pos++);
+            if (a < 0x80) {
+                chars[count++] = (char) a;
+            } else if (a < 0xc0) {
+                chars[count++] = '?';
+            } else if (a < 0xe0) {
+                int b = readUnsignedByte();
+                if ((b & 0xc0) != 0x80) {
+                    chars[count++] = '?';
+                    // probably a US-ASCII char after a Latin-1 char
+                    chars[count++] = (char) b;
+                } else {
+                    chars[count++] = (char) ((a & 0x1F) << 6 | b & 0x3F);
+                }
+            } else if (a < 0xf0) {
+                int b = readUnsignedByte();
+                if ((b & 0xc0) != 0x80) {
+                    chars[count++] = '?';
+                    chars[count++] = (char) b;
+                    continue;
+                }
+                int c = readUnsignedByte();
+                if ((c & 0xc0) != 0x80) {
+                    // probably a US-ASCII char after two Latin-1 chars?
+                    chars[count++] = '?';
+                    chars[count++] = '?';
+                    chars[count++] = (char) c;
+                } else {
+                    chars[count++] = (char) ((a & 0x0F) << 12 | (b & 0x3F) << 6 | c & 0x3F);
+                }
             } else {
-                sb.append((char) ((a & 0x1F) << 6 | b & 0x3F));
+                chars[count++] = '?';
             }
-            return 2;
-        } else if (a < 0xf0) {
-            int b = readUnsignedByte();
-            if ((b & 0xc0) != 0x80) {
-                sb.append('?');
-                sb.append((char) b);
-                return 2;
+        }
+        return new String(chars, 0, count);
+    }
+
+    /** Reads an UTF string like {@link #readUTF()}, but returns the same instance for repeated ASCII keys. */
+    String readKey() {
+        require(2);
+        int bytes = (int) view.getUint16(pos);
+        if (bytes == 0 || bytes > MAX_KEY_LENGTH) {
+            return readUTF();
+        }
+        require(2 + bytes);
+        int start = pos + 2;
+        int hash = 0;
+        for (int i = 0; i < bytes; i++) {
+            int b = (int) view.getUint8(start + i);
+            if (b >= 0x80) {
+                return readUTF();
             }
-            int c = readUnsignedByte();
-            if ((c & 0xc0) != 0x80) {
-                // probably a US-ASCII char after two Latin-1 chars?
-                sb.append('?').append('?');
-                sb.append((char) c);
-            } else {
-                sb.append((char) ((a & 0x0F) << 12 | (b & 0x3F) << 6 | c & 0x3F));
+            hash = 31 * hash + b;
+        }
+
+        if (keys == null) {
+            keys = new String[KEY_TABLE_SIZE];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (KEY_TABLE_SIZE - 1);
+        String key = keys[slot];
+        if (key != null && matches(key, start, bytes)) {
+            pos = start + bytes;
+            return key;
+        }
+        key = readUTF();
+        keys[slot] = key;
+        return key;
+    }
+
+    private boolean matches(String key, int start, int bytes) {
+        if (key.length() != bytes) {
+            return false;
+        }
+        for (int i = 0; i < bytes; i++) {
+            if (key.charAt(i) != (int) view.getUint8(start + i)) {
+                return false;
             }
-            return 3;
-        } else {
-            sb.append('?');
-            return 1;
+        }
+        return true;
+    }
+
+    private int readUnsignedByte() {
+        require(1);
+        return (int) view.getUint8(pos++);
+    }
+
+    private void require(int bytes) {
+        if (pos + bytes > length) {
+            throw new RuntimeException("EOF");
         }
     }
 }
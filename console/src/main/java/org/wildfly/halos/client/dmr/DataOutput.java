@@ -15,111 +15,131 @@
  */
 package org.wildfly.halos.client.dmr;
 
-import java.nio.charset.StandardCharsets;
-
 import elemental2.core.ArrayBuffer;
 import elemental2.core.DataView;
-import elemental2.core.Int8Array;
-import elemental2.core.JsArray;
+import elemental2.core.Uint8Array;
 
+/**
+ * Writes DMR data into a growable array buffer. All values are written through a single {@link DataView} which is
+ * only replaced when the buffer grows.
+ */
 class DataOutput {
 
-    private final JsArray<Byte> bytes;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private Uint8Array bytes;
+    private DataView view;
+    private int pos;
 
     DataOutput() {
-        bytes = new JsArray<>();
+        ArrayBuffer buffer = new ArrayBuffer(INITIAL_CAPACITY);
+        bytes = new Uint8Array(buffer);
+        view = new DataView(buffer);
+        pos = 0;
+    }
+
+    /** @return the written bytes as array buffer */
+    ArrayBuffer toArrayBuffer() {
+        return bytes.buffer.slice(0, pos);
     }
 
+    /** @return the written bytes as binary string, as expected by {@code btoa()} */
     @Override
     public String toString() {
-        int length = bytes.getLength();
-        byte[] array = new byte[length];
-        for (int i = 0; i < length; i++) {
-            array[i] = bytes.getAt(i);
+        char[] chars = new char[pos];
+        for (int i = 0; i < pos; i++) {
+            chars[i] = (char) view.getUint8(i);
         }
-        return new String(array, StandardCharsets.ISO_8859_1);
+        return new String(chars);
     }
 
-
     // ------------------------------------------------------ write a-z
 
     void write(byte[] bits) {
+        ensureCapacity(bits.length);
         for (int i = 0; i < bits.length; i++) {
-            bytes.push(bits[i]);
-        }
-    }
-
-    private void write(byte[] b, int off, int len) {
-        for (int i = 0; i < len; i++) {
-            bytes.push(b[off + i]);
+            view.setInt8(pos++, bits[i]);
         }
     }
 
     void writeBoolean(boolean v) {
-        bytes.push(v ? (byte) 1 : (byte) 0);
+        writeByte(v ? 1 : 0);
     }
 
     void writeByte(int v) {
-        bytes.push((byte) v);
+        ensureCapacity(1);
+        view.setInt8(pos++, (byte) v);
     }
 
     void writeChar(int v) {
-        bytes.push((byte) (v >>> 8));
-        bytes.push((byte) (v & 0xFF));
+        ensureCapacity(2);
+        view.setUint16(pos, v & 0xFFFF);
+        pos += 2;
     }
 
     void writeDouble(double v) {
-        ArrayBuffer buffer = new ArrayBuffer(8);
-        Int8Array array = new Int8Array(buffer);
-        DataView view = new DataView(buffer);
-        view.setFloat64(0, v);
-        for (int i = 0; i < array.getLength(); i++) {
-            bytes.push(array.getAt(i).byteValue());
-        }
+        ensureCapacity(8);
+        view.setFloat64(pos, v);
+        pos += 8;
     }
 
     void writeInt(int v) {
-        bytes.push((byte) (v >>> 24));
-        bytes.push((byte) ((v >>> 16) & 0xFF));
-        bytes.push((byte) ((v >>> 8) & 0xFF));
-        bytes.push((byte) (v & 0xFF));
+        ensureCapacity(4);
+        view.setInt32(pos, v);
+        pos += 4;
     }
 
     void writeLong(long v) {
-        bytes.push((byte) (v >>> 56));
-        bytes.push((byte) ((v >>> 48) & 0xFF));
-        bytes.push((byte) ((v >>> 40) & 0xFF));
-        bytes.push((byte) ((v >>> 32) & 0xFF));
-        bytes.push((byte) ((v >>> 24) & 0xFF));
-        bytes.push((byte) ((v >>> 16) & 0xFF));
-        bytes.push((byte) ((v >>> 8) & 0xFF));
-        bytes.push((byte) (v & 0xFF));
-    }
-
-    private void writeShort(int v) {
-        bytes.push((byte) (v >>> 8));
-        bytes.push((byte) (v & 0xFF));
+        ensureCapacity(8);
+        view.setInt32(pos, (int) (v >>> 32));
+        view.setInt32(pos + 4, (int) v);
+        pos += 8;
     }
 
     void writeUTF(String s) {
         int length = s.length();
-        byte[] bytes = new byte[length * 3];
-        int bl = 0;
-        char c;
-        for (int i = 0; i < length; i++) {
-            c = s.charAt(i);
+        ensureCapacity(2 + length * 3);
+        int start = pos;
+        pos += 2;
+        int i = 0;
+
+        // fast path: most DMR strings are plain ASCII
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == 0 || c > 0x7f) {
+                break;
+            }
+            view.setUint8(pos++, c);
+        }
+
+        for (; i < length; i++) {
+            char c = s.charAt(i);
             if (c > 0 && c <= 0x7f) {
-                bytes[bl++] = (byte) c;
+                view.setUint8(pos++, c);
             } else if (c <= 0x07ff) {
-                bytes[bl++] = (byte) (0xc0 | 0x1f & c >> 6);
-                bytes[bl++] = (byte) (0x80 | 0x3f & c);
+                view.setUint8(pos++, 0xc0 | 0x1f & c >> 6);
+                view.setUint8(pos++, 0x80 | 0x3f & c);
             } else {
-                bytes[bl++] = (byte) (0xe0 | 0x0f & c >> 12);
-                bytes[bl++] = (byte) (0x80 | 0x3f & c >> 6);
-                bytes[bl++] = (byte) (0x80 | 0x3f & c);
+                view.setUint8(pos++, 0xe0 | 0x0f & c >> 12);
+                view.setUint8(pos++, 0x80 | 0x3f & c >> 6);
+                view.setUint8(pos++, 0x80 | 0x3f & c);
             }
         }
-        writeShort(bl);
-        write(bytes, 0, bl);
+        view.setUint16(start, pos - start - 2);
+    }
+
+    // ------------------------------------------------------ internals
+
+    private void ensureCapacity(int additional) {
+        int capacity = bytes.getLength();
+        int required = pos + additional;
+        if (required > capacity) {
+            int newCapacity = Math.max(capacity * 2, required);
+            ArrayBuffer buffer = new ArrayBuffer(newCapacity);
+            Uint8Array newBytes = new Uint8Array(buffer);
+            newBytes.set(bytes.subarray(0, pos));
+            bytes = newBytes;
+            view = new DataView(buffer);
+        }
     }
-}
\ No newline at end of file
+}
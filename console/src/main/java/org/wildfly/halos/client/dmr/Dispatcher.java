@@ -15,41 +15,115 @@
  */
 package org.wildfly.halos.client.dmr;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import elemental2.dom.Headers;
 import elemental2.dom.RequestInit;
+import elemental2.dom.XMLHttpRequest;
 import elemental2.promise.Promise;
 import org.wildfly.halos.client.config.Endpoints;
 import org.wildfly.halos.client.config.Environment;
 
 import static elemental2.dom.DomGlobal.fetch;
-import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.RESULT;
+import static elemental2.dom.DomGlobal.setTimeout;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
 
-/** Executes operations against the management endpoint. */
+/**
+ * Executes operations against the management endpoint.
+ * <p>
+ * If enabled by {@code halos.dispatcher.batch}, read-only operations without operation headers are not sent
+ * immediately, but collected and sent as one composite. The batch is sent at the end of the current event loop tick or
+ * after {@code halos.dispatcher.batch.window} milliseconds. The composite result is split back into the results of the
+ * individual operations. If the composite fails because one of the steps failed, the management endpoint still returns
+ * the result of each step, which is used as is. Only steps without a result and all operations of a composite which
+ * failed because of an error (e.g. a network error) are executed one by one. Either way, each promise resolves or
+ * rejects exactly like an unbatched execution would.
+ */
 @Singleton
 public class Dispatcher {
 
     private static final String ACCEPT = "Accept";
+    private static final String APPLICATION_DMR_BINARY = "application/dmr-binary";
     private static final String APPLICATION_DMR_ENCODED = "application/dmr-encoded";
+    // prefer binary, but accept base64 as well
+    private static final String APPLICATION_DMR_ANY = APPLICATION_DMR_BINARY + ", " + APPLICATION_DMR_ENCODED + ";q=0.5";
     private static final String CONTENT_TYPE = "Content-Type";
+    private static final String TEXT_EVENT_STREAM = "text/event-stream";
+    private static final String EVENT_DATA = "data:";
+    private static final Set<String> BATCHABLE_OPERATIONS = new HashSet<>(asList(
+            QUERY,
+            READ_ATTRIBUTE_OPERATION,
+            READ_CHILDREN_NAMES_OPERATION,
+            READ_CHILDREN_RESOURCES_OPERATION,
+            READ_CHILDREN_TYPES_OPERATION,
+            READ_RESOURCE_DESCRIPTION_OPERATION,
+            READ_RESOURCE_OPERATION));
 
     private final Environment environment;
     private final Endpoints endpoints;
+    private final List<Batched> batch;
 
     @Inject
     public Dispatcher(Environment environment, Endpoints endpoints) {
         this.environment = environment;
         this.endpoints = endpoints;
+        this.batch = new ArrayList<>();
     }
 
     // ------------------------------------------------------ execute
 
     public Promise<ModelNode> execute(Operation operation) {
+        if (environment.batchOperations && batchable(operation)) {
+            return batch(operation);
+        }
         return dmr(operation);
     }
 
+    /**
+     * Executes the operation against all instances and calls {@code onResult} for each instance as soon as its result
+     * is available. The property name is the name of the instance, the property value the result.
+     * <p>
+     * The results are read from the server sent events of the management endpoint. Server sent events are text only,
+     * so the operation and the results are always base64 encoded, regardless of {@code halos.dmr.binary}. Operations
+     * are never batched. The returned promise resolves with the aggregated result of all instances once the last
+     * instance has answered.
+     */
+    public Promise<ModelNode> execute(Operation operation, Consumer<Property> onResult) {
+        return new Promise<>((resolve, reject) -> {
+            ModelNode aggregated = new ModelNode();
+            int[] position = {0};
+
+            // EventSource can't POST, so read the event stream from the progress events of an XMLHttpRequest
+            XMLHttpRequest xhr = new XMLHttpRequest();
+            xhr.open("POST", endpoints.management);
+            xhr.setRequestHeader(ACCEPT, TEXT_EVENT_STREAM);
+            xhr.setRequestHeader(CONTENT_TYPE, APPLICATION_DMR_ENCODED);
+            xhr.addEventListener("progress", event -> position[0] = readEvents(xhr.responseText, position[0],
+                    aggregated, onResult));
+            xhr.addEventListener("load", event -> {
+                if (xhr.status >= 200 && xhr.status < 300) {
+                    readEvents(xhr.responseText, position[0], aggregated, onResult);
+                    resolve.onInvoke(aggregated);
+                } else {
+                    reject.onInvoke(new DispatcherException("Error executing operation '" + operation.asCli() +
+                            "': " + xhr.status + " " + xhr.statusText));
+                }
+            });
+            xhr.addEventListener("error", event -> reject.onInvoke(new DispatcherException(
+                    "Error executing operation '" + operation.asCli() + "': Network error")));
+            xhr.send(operation.toBase64String());
+        });
+    }
+
     public Promise<CompositeResult> execute(Composite composite) {
         return dmr(composite).then(modelNode -> {
             ModelNode steps = modelNode.get(RESULT);
@@ -57,30 +131,162 @@ public class Dispatcher {
         });
     }
 
+    // ------------------------------------------------------ batch
+
+    /**
+     * Only well-known read-only operations are batched. Operations with headers are sent on their own, since the
+     * headers of a step (e.g. the roles to run as) are ignored inside a composite.
+     */
+    private boolean batchable(Operation operation) {
+        return !(operation instanceof Composite) && BATCHABLE_OPERATIONS.contains(operation.name) &&
+                !operation.hasDefined(OPERATION_HEADERS);
+    }
+
+    private Promise<ModelNode> batch(Operation operation) {
+        return new Promise<>((resolve, reject) -> {
+            batch.add(new Batched(operation, resolve::onInvoke, reject::onInvoke));
+            if (batch.size() == 1) {
+                if (environment.batchWindow > 0) {
+                    setTimeout(ignore -> flush(), environment.batchWindow);
+                } else {
+                    // flush after the current tick
+                    Promise.resolve((Object) null).then(ignore -> {
+                        flush();
+                        return null;
+                    });
+                }
+            }
+        });
+    }
+
+    private void flush() {
+        List<Batched> batched = new ArrayList<>(batch);
+        batch.clear();
+        if (batched.size() == 1) {
+            batched.get(0).forward(dmr(batched.get(0).operation));
+
+        } else if (batched.size() > 1) {
+            Composite composite = new Composite(batched.stream().map(b -> b.operation).collect(toList()));
+            dmr(composite)
+                    .then(modelNode -> {
+                        // a failed step fails the composite, but the results of all steps are still there
+                        ModelNode steps = modelNode.get(RESULT);
+                        List<Batched> missing = new ArrayList<>();
+                        for (int i = 0; i < batched.size(); i++) {
+                            ModelNode step = steps.get("step-" + (i + 1)); //NON-NLS
+                            if (completed(step)) {
+                                batched.get(i).resolve.accept(step);
+                            } else {
+                                missing.add(batched.get(i));
+                            }
+                        }
+                        oneByOne(missing);
+                        return null;
+                    })
+                    .catch_(error -> {
+                        oneByOne(batched);
+                        return null;
+                    });
+        }
+    }
+
+    /** @return whether the step was executed, steps which were cancelled or not executed at all are not */
+    private boolean completed(ModelNode step) {
+        if (step.hasDefined(OUTCOME)) {
+            String outcome = step.get(OUTCOME).asString();
+            return SUCCESS.equals(outcome) || FAILED.equals(outcome);
+        }
+        return false;
+    }
+
+    private void oneByOne(List<Batched> batched) {
+        for (Batched b : batched) {
+            b.forward(dmr(b.operation));
+        }
+    }
+
     // ------------------------------------------------------ internals
 
+    /**
+     * Reads all complete server sent events starting at {@code position} and returns the position after the last
+     * complete event.
+     */
+    private int readEvents(String payload, int position, ModelNode aggregated, Consumer<Property> onResult) {
+        int end;
+        while ((end = payload.indexOf("\n\n", position)) != -1) {
+            StringBuilder data = new StringBuilder();
+            for (String line : payload.substring(position, end).split("\n")) {
+                if (line.startsWith(EVENT_DATA)) {
+                    data.append(line.substring(EVENT_DATA.length()).trim());
+                }
+            }
+            if (data.length() != 0) {
+                for (Property property : ModelNode.fromBase64(data.toString()).asPropertyList()) {
+                    aggregated.get(property.getName()).set(property.getValue());
+                    onResult.accept(property);
+                }
+            }
+            position = end + 2;
+        }
+        return position;
+    }
+
     private Promise<ModelNode> dmr(Operation operation) {
         Headers headers = new Headers();
-        headers.append(ACCEPT, APPLICATION_DMR_ENCODED);
-        headers.append(CONTENT_TYPE, APPLICATION_DMR_ENCODED);
-
         RequestInit request = RequestInit.create();
+        if (environment.binaryDmr) {
+            headers.append(ACCEPT, APPLICATION_DMR_ANY);
+            headers.append(CONTENT_TYPE, APPLICATION_DMR_BINARY);
+            request.setBody(operation.toBinary());
+        } else {
+            headers.append(ACCEPT, APPLICATION_DMR_ENCODED);
+            headers.append(CONTENT_TYPE, APPLICATION_DMR_ENCODED);
+            request.setBody(operation.toBase64String());
+        }
         if (environment.cors) {
             request.setMode("cors");
         }
         request.setMethod("POST");
         request.setHeaders(headers);
-        request.setBody(operation.toBase64String());
 
         return fetch(endpoints.management, request)
                 .then(response -> {
                     if (response.ok) {
-                        return response.text();
+                        String contentType = response.headers.get(CONTENT_TYPE);
+                        if (contentType != null && contentType.startsWith(APPLICATION_DMR_BINARY)) {
+                            return response.arrayBuffer()
+                                    .then(buffer -> Promise.resolve(ModelNode.fromBinary(buffer)));
+                        } else {
+                            return response.text()
+                                    .then(payload -> Promise.resolve(ModelNode.fromBase64(payload)));
+                        }
                     } else {
                         throw new DispatcherException("Error executing operation '" + operation.asCli() + "': " +
                                 response.status + " " + response.statusText);
                     }
-                })
-                .then(payload -> Promise.resolve(ModelNode.fromBase64(payload)));
+                });
+    }
+
+    private static class Batched {
+
+        final Operation operation;
+        final Consumer<ModelNode> resolve;
+        final Consumer<Object> reject;
+
+        Batched(Operation operation, Consumer<ModelNode> resolve, Consumer<Object> reject) {
+            this.operation = operation;
+            this.resolve = resolve;
+            this.reject = reject;
+        }
+
+        void forward(Promise<ModelNode> promise) {
+            promise.then(modelNode -> {
+                resolve.accept(modelNode);
+                return null;
+            }).catch_(error -> {
+                reject.accept(error);
+                return null;
+            });
+        }
     }
 }
@@ -36,7 +36,10 @@ class ListModelValue extends ModelValue {
 
     private ListModelValue(ListModelValue orig) {
         super(ModelType.LIST);
-        list = new ArrayList<>(orig.list);
+        list = new ArrayList<>(orig.list.size());
+        for (ModelNode node : orig.list) {
+            list.add(node.clone());
+        }
     }
 
     ListModelValue(List<ModelNode> list) {
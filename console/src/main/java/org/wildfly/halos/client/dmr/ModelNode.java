@@ -17,13 +17,15 @@ package org.wildfly.halos.client.dmr;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import elemental2.core.ArrayBuffer;
+
 import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.FAILURE_DESCRIPTION;
 import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.OUTCOME;
 import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.SUCCESS;
@@ -41,14 +43,29 @@ public class ModelNode implements Cloneable {
         // String safeEncoded = CharMatcher.breakingWhitespace().removeFrom(encoded);
         String decoded = Base64.decode(encoded);
         ModelNode node = new ModelNode();
-        node.readExternal(new DataInput(decoded.getBytes(StandardCharsets.ISO_8859_1)));
+        node.readExternal(DataInput.fromBinaryString(decoded));
+        return node;
+    }
+
+    /** Creates a new node from binary data w/o the detour over base64 */
+    public static ModelNode fromBinary(ArrayBuffer buffer) {
+        ModelNode node = new ModelNode();
+        node.readExternal(new DataInput(buffer));
         return node;
     }
 
     private static final String NEW_VALUE_IS_NULL = "newValue is null";
+    // a value shared with more copies is copied right away
+    private static final int MAX_COPIES = 16;
 
     private boolean protect = false;
+    // cached hash code of protected nodes, 0 if not yet calculated
+    private int hash = 0;
     private ModelValue value;
+    // the node which handed out this node as a child, see modifiable()
+    private ModelNode parent;
+    // the copy-on-write share of the value, null if the value is not shared
+    private Share share;
 
     public ModelNode() {
         this.value = ModelValue.UNDEFINED;
@@ -64,6 +81,7 @@ public class ModelNode implements Cloneable {
      */
     public void protect() {
         if (!protect) {
+            modifiable();
             protect = true;
             value = value.protect();
         }
@@ -220,6 +238,12 @@ public class ModelNode implements Cloneable {
      * @throws IllegalArgumentException if no conversion is possible
      */
     public Property asProperty() throws IllegalArgumentException {
+        if (value.getType() == ModelType.PROPERTY) {
+            // the property of a property value is handed out as it is
+            Property property = children().asProperty();
+            adopt(property.getValue());
+            return property;
+        }
         return value.asProperty();
     }
 
@@ -232,6 +256,17 @@ public class ModelNode implements Cloneable {
      * @throws IllegalArgumentException if no conversion is possible
      */
     public List<Property> asPropertyList() throws IllegalArgumentException {
+        ModelType type = value.getType();
+        if (type == ModelType.PROPERTY) {
+            List<Property> properties = children().asPropertyList();
+            adopt(properties.get(0).getValue());
+            return properties;
+        } else if (type == ModelType.LIST) {
+            // property elements hand out their properties as they are
+            for (ModelNode node : children().asList()) {
+                node.parent = this;
+            }
+        }
         return value.asPropertyList();
     }
 
@@ -328,7 +363,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(int newValue) {
-        checkProtect();
+        beforeSet();
         value = new IntModelValue(newValue);
         return this;
     }
@@ -340,7 +375,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(long newValue) {
-        checkProtect();
+        beforeSet();
         value = new LongModelValue(newValue);
         return this;
     }
@@ -352,7 +387,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(double newValue) {
-        checkProtect();
+        beforeSet();
         value = new DoubleModelValue(newValue);
         return this;
     }
@@ -364,7 +399,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(boolean newValue) {
-        checkProtect();
+        beforeSet();
         value = BooleanModelValue.valueOf(newValue);
         return this;
     }
@@ -379,7 +414,7 @@ public class ModelNode implements Cloneable {
         if (newValue == null) {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
-        checkProtect();
+        beforeSet();
         value = new ExpressionValue(newValue);
         return this;
     }
@@ -394,7 +429,7 @@ public class ModelNode implements Cloneable {
         if (newValue == null) {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
-        checkProtect();
+        beforeSet();
         value = new StringModelValue(newValue);
         return this;
     }
@@ -434,7 +469,7 @@ public class ModelNode implements Cloneable {
         if (newValue == null) {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
-        checkProtect();
+        beforeSet();
         value = new BigDecimalModelValue(newValue);
         return this;
     }
@@ -449,13 +484,14 @@ public class ModelNode implements Cloneable {
         if (newValue == null) {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
-        checkProtect();
+        beforeSet();
         value = new BigIntegerModelValue(newValue);
         return this;
     }
 
     /**
-     * Change this node's value to the given value. The value is copied from the parameter.
+     * Change this node's value to the given value. The value is copied from the parameter. Like {@link #clone()} the
+     * copy is made on the first modification.
      *
      * @param newValue the new value
      * @return this node
@@ -465,7 +501,10 @@ public class ModelNode implements Cloneable {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
         checkProtect();
-        value = newValue.value.copy();
+        // clone before this node changes: newValue might be a parent of this node
+        ModelNode clone = newValue.clone();
+        beforeSet();
+        take(clone);
         return this;
     }
 
@@ -479,7 +518,7 @@ public class ModelNode implements Cloneable {
         if (newValue == null) {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
-        checkProtect();
+        beforeSet();
         byte[] clone = new byte[newValue.length];
         System.arraycopy(newValue, 0, clone, 0, newValue.length);
 
@@ -497,7 +536,7 @@ public class ModelNode implements Cloneable {
         if (newValue == null) {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
-        checkProtect();
+        beforeSet();
         value = TypeModelValue.of(newValue);
         return this;
     }
@@ -525,7 +564,10 @@ public class ModelNode implements Cloneable {
      */
     public ModelNode set(String propertyName, ModelNode propertyValue) {
         checkProtect();
-        value = new PropertyModelValue(propertyName, propertyValue);
+        // clone before this node changes: propertyValue might be a parent of this node
+        ModelValue newValue = new PropertyModelValue(propertyName, propertyValue);
+        beforeSet();
+        value = newValue;
         return this;
     }
 
@@ -537,7 +579,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, int propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -552,7 +594,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, long propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -567,7 +609,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, double propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -582,7 +624,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, boolean propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -597,7 +639,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, String propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -612,7 +654,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode setExpression(String propertyName, String propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.setExpression(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -627,7 +669,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, BigDecimal propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -642,7 +684,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, BigInteger propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -657,7 +699,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, byte[] propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -672,7 +714,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode set(String propertyName, ModelType propertyValue) {
-        checkProtect();
+        beforeSet();
         ModelNode node = new ModelNode();
         node.set(propertyValue);
         value = new PropertyModelValue(propertyName, node);
@@ -690,6 +732,7 @@ public class ModelNode implements Cloneable {
             throw new IllegalArgumentException(NEW_VALUE_IS_NULL);
         }
         checkProtect();
+        // clone before this node changes: the collection might contain a parent of this node
         ArrayList<ModelNode> list = new ArrayList<>(newValue.size());
         for (ModelNode node : newValue) {
             if (node == null) {
@@ -698,6 +741,7 @@ public class ModelNode implements Cloneable {
                 list.add(node.clone());
             }
         }
+        beforeSet();
         value = new ListModelValue(list);
         return this;
     }
@@ -708,7 +752,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode setEmptyList() {
-        checkProtect();
+        beforeSet();
         value = new ListModelValue();
         return this;
     }
@@ -719,7 +763,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode setEmptyObject() {
-        checkProtect();
+        beforeSet();
         value = new ObjectModelValue();
         return this;
     }
@@ -730,7 +774,7 @@ public class ModelNode implements Cloneable {
      * @return this node
      */
     public ModelNode clear() {
-        checkProtect();
+        beforeSet();
         value = ModelValue.UNDEFINED;
         return this;
     }
@@ -746,13 +790,16 @@ public class ModelNode implements Cloneable {
      * @throws IllegalArgumentException if this node does not support getting a child with the given name
      */
     public ModelNode get(String name) {
-        ModelValue value = this.value;
+        ModelValue value = children();
         if (value == ModelValue.UNDEFINED) {
-            checkProtect();
+            beforeSet();
             this.value = new ObjectModelValue();
-            return this.value.getChild(name);
+            return adopt(this.value.getChild(name));
+        }
+        if (value.getType() == ModelType.OBJECT && !value.has(name)) {
+            value = modifiable();
         }
-        return value.getChild(name);
+        return adopt(value.getChild(name));
     }
 
     /**
@@ -766,7 +813,7 @@ public class ModelNode implements Cloneable {
      * @throws NoSuchElementException if the element does not exist
      */
     public ModelNode require(String name) throws NoSuchElementException {
-        return value.requireChild(name);
+        return adopt(children().requireChild(name));
     }
 
     /**
@@ -779,7 +826,11 @@ public class ModelNode implements Cloneable {
      * @throws NoSuchElementException if the element does not exist
      */
     public ModelNode remove(String name) throws NoSuchElementException {
-        return value.removeChild(name);
+        ModelNode child = modifiable().removeChild(name);
+        if (child != null) {
+            child.parent = null;
+        }
+        return child;
     }
 
     /**
@@ -793,12 +844,15 @@ public class ModelNode implements Cloneable {
      * @throws IllegalArgumentException if this node does not support getting a child with the given index
      */
     public ModelNode get(int index) {
-        ModelValue value = this.value;
+        ModelValue value = children();
         if (value == ModelValue.UNDEFINED) {
-            checkProtect();
-            return (this.value = new ListModelValue()).getChild(index);
+            beforeSet();
+            return adopt((this.value = new ListModelValue()).getChild(index));
+        }
+        if (value.getType() == ModelType.LIST && !value.has(index)) {
+            value = modifiable();
         }
-        return value.getChild(index);
+        return adopt(value.getChild(index));
     }
 
     /**
@@ -812,7 +866,7 @@ public class ModelNode implements Cloneable {
      * @throws NoSuchElementException if the element does not exist
      */
     public ModelNode require(int index) {
-        return value.requireChild(index);
+        return adopt(children().requireChild(index));
     }
 
     /**
@@ -1060,12 +1114,12 @@ public class ModelNode implements Cloneable {
      */
     public ModelNode add() {
         checkProtect();
-        ModelValue value = this.value;
         if (value == ModelValue.UNDEFINED) {
-            this.value = new ListModelValue();
-            return this.value.addChild();
+            beforeSet();
+            value = new ListModelValue();
+            return adopt(value.addChild());
         }
-        return value.addChild();
+        return adopt(modifiable().addChild());
     }
 
     /**
@@ -1123,7 +1177,7 @@ public class ModelNode implements Cloneable {
      * ModelType#UNDEFINED}
      */
     public boolean hasDefined(int index) {
-        return value.has(index) && get(index).isDefined();
+        return value.has(index) && value.requireChild(index).isDefined();
     }
 
     /**
@@ -1134,7 +1188,7 @@ public class ModelNode implements Cloneable {
      * @return true if there is a node at the given index and its type is not undefined
      */
     public boolean hasDefined(String key) {
-        return value.has(key) && get(key).isDefined();
+        return value.has(key) && value.requireChild(key).isDefined();
     }
 
     /**
@@ -1155,6 +1209,15 @@ public class ModelNode implements Cloneable {
      * @return the entry list
      */
     public List<ModelNode> asList() {
+        ModelType type = value.getType();
+        if (type == ModelType.LIST || type == ModelType.PROPERTY) {
+            // the elements of lists and the node of property values are handed out as they are
+            List<ModelNode> nodes = children().asList();
+            for (ModelNode node : nodes) {
+                node.parent = this;
+            }
+            return nodes;
+        }
         return value.asList();
     }
 
@@ -1205,6 +1268,13 @@ public class ModelNode implements Cloneable {
         return Base64.encode(out.toString());
     }
 
+    /** @return this node in binary format */
+    public ArrayBuffer toBinary() {
+        DataOutput out = new DataOutput();
+        writeExternal(out);
+        return out.toArrayBuffer();
+    }
+
     /**
      * Return a copy of this model node, with all system property expressions locally resolved. The caller must have
      * permission to access all of the system properties named in the node tree.
@@ -1235,28 +1305,47 @@ public class ModelNode implements Cloneable {
      * @return {@code true} if they are equal, {@code false} otherwise
      */
     public boolean equals(ModelNode other) {
-        return this == other || other != null && other.value.equals(value);
+        if (this == other) {
+            return true;
+        }
+        if (other == null) {
+            return false;
+        }
+        if (protect && other.protect && hashCode() != other.hashCode()) {
+            return false;
+        }
+        return other.value == value || other.value.equals(value);
     }
 
     /**
      * Get the hash code of this node object.  Note that unless the value is {@link #protect()}ed, the hash code may
-     * change over time, thus making unprotected nodes unsuitable for use as hash table keys.
+     * change over time, thus making unprotected nodes unsuitable for use as hash table keys. The hash code of protected
+     * nodes is calculated only once.
      *
      * @return the hash code
      */
     @Override
     public int hashCode() {
+        if (protect) {
+            if (hash == 0) {
+                hash = value.hashCode();
+            }
+            return hash;
+        }
         return value.hashCode();
     }
 
     /**
-     * Clone this model node.
+     * Clone this model node. The clone is copy-on-write: It shares the value with this node. The value is copied when
+     * one of the nodes is modified or when the clone hands out a child. Only one level is copied at a time: The
+     * children of the copy are copy-on-write clones again.
      *
      * @return the clone
      */
     public ModelNode clone() {
         ModelNode clone = new ModelNode();
-        clone.value = value.copy();
+        clone.value = value;
+        shareWith(clone);
         return clone;
     }
 
@@ -1268,6 +1357,18 @@ public class ModelNode implements Cloneable {
         value.formatAsJSON(builder, indent, multiLine);
     }
 
+    /**
+     * Replaces the child of an object node with the given node instance. Unlike {@link #get(String)} + {@link
+     * #set(ModelNode)} the node is not copied, but shared.
+     */
+    void setChild(String name, ModelNode child) {
+        checkProtect();
+        ModelValue value = modifiable();
+        if (value instanceof ObjectModelValue) {
+            ((ObjectModelValue) value).setChild(name, child);
+        }
+    }
+
     /**
      * Get the current type of this node.
      *
@@ -1360,16 +1461,154 @@ public class ModelNode implements Cloneable {
         }
     }
 
+    // ------------------------------------------------------ copy-on-write
+
+    /*
+     * Objects, lists and properties are shared copy-on-write between a node and its clones. The node which held the
+     * value first is the owner of the share, the clones are copies. Only the owner hands out the children of a shared
+     * value. A copy gets its own value before it hands out children or is modified. Before the owner is modified, all
+     * copies get their own value.
+     *
+     * A modification through a child handle (node.get("a").get("b").set(42)) modifies the values of all parents of the
+     * child. So each node remembers the node which handed it out, and the shares of all parents are resolved first,
+     * starting with the outermost parent. Resolving an outer share creates copy-on-write clones of the children, so
+     * the inner shares have to be resolved after the outer ones.
+     */
+
+    /** Lets {@code copy}, whose value is the value of this node, share the value copy-on-write. */
+    private void shareWith(ModelNode copy) {
+        ModelType type = value.getType();
+        if (type == ModelType.OBJECT || type == ModelType.LIST || type == ModelType.PROPERTY) {
+            Share share = this.share;
+            if (share == null) {
+                share = this.share = new Share(this);
+            }
+            if (!share.owner.protect) {
+                // protected owners are never modified and don't need to know their copies
+                if (share.copies.size() >= MAX_COPIES) {
+                    copy.value = value.copy();
+                    return;
+                }
+                share.copies.add(copy);
+            }
+            copy.share = share;
+        }
+        // other values are immutable and shared anyway
+    }
+
+    /** Takes over the value and the share of a clone which is not used otherwise. */
+    private void take(ModelNode clone) {
+        value = clone.value;
+        share = clone.share;
+        if (share != null) {
+            share.replace(clone, this);
+        }
+    }
+
+    /** @return the value to hand out children from */
+    private ModelValue children() {
+        if (share != null && share.owner != this) {
+            detach();
+        }
+        return value;
+    }
+
+    /** @return the value to modify in place */
+    private ModelValue modifiable() {
+        if (parent != null) {
+            parent.modifiable();
+        }
+        if (share != null) {
+            if (share.owner == this) {
+                share.release();
+                share = null;
+            } else {
+                detach();
+            }
+        }
+        return value;
+    }
+
+    /** Must be called before the value is replaced. */
+    private void beforeSet() {
+        checkProtect();
+        if (parent != null) {
+            parent.modifiable();
+        }
+        if (share != null) {
+            if (share.owner == this) {
+                share.release();
+            } else {
+                share.remove(this);
+            }
+            share = null;
+        }
+    }
+
+    /** Gives a copy its own value. */
+    private void detach() {
+        share.remove(this);
+        share = null;
+        value = value.copy();
+    }
+
+    private ModelNode adopt(ModelNode child) {
+        if (child != null) {
+            child.parent = this;
+        }
+        return child;
+    }
+
+    private static class Share {
+
+        final ModelNode owner;
+        final List<ModelNode> copies;
+
+        Share(ModelNode owner) {
+            this.owner = owner;
+            this.copies = new ArrayList<>();
+        }
+
+        /** Gives all copies their own value. */
+        void release() {
+            for (ModelNode copy : copies) {
+                copy.share = null;
+                copy.value = copy.value.copy();
+            }
+            copies.clear();
+        }
+
+        // copies are compared by identity: all of them are equal
+
+        void remove(ModelNode copy) {
+            for (Iterator<ModelNode> iterator = copies.iterator(); iterator.hasNext(); ) {
+                if (iterator.next() == copy) {
+                    iterator.remove();
+                    return;
+                }
+            }
+        }
+
+        void replace(ModelNode copy, ModelNode replacement) {
+            for (int i = 0; i < copies.size(); i++) {
+                if (copies.get(i) == copy) {
+                    copies.set(i, replacement);
+                    return;
+                }
+            }
+        }
+    }
+
     /** @return {@code true} if this node has an outcome and the outcome does not equal "success" */
     public boolean isFailure() {
-        return hasDefined(OUTCOME) && !get(OUTCOME).asString().equals(SUCCESS);
+        return hasDefined(OUTCOME) && !value.requireChild(OUTCOME).asString().equals(SUCCESS);
     }
 
     /** @return the failure description or "No failure-description provided" */
     public String getFailureDescription() {
         if (hasDefined(FAILURE_DESCRIPTION)) {
             StringBuilder failure = new StringBuilder();
-            get(FAILURE_DESCRIPTION).format(failure, 0, true);
+            value.requireChild(FAILURE_DESCRIPTION).format(failure, 0, true);
             return failure.toString();
         } else {
             return "No failure-description provided";
@@ -38,33 +38,18 @@ public class ModelNodeHelper {
      * @param modelNode The model node to read from
      * @param path      A path separated with "."
      * @return The nested node, or an undefined model node.
+     * @see ModelPath
      */
     public static ModelNode failSafeGet(ModelNode modelNode, String path) {
-        ModelNode undefined = new ModelNode();
-
-        if (path != null && path.length() != 0) {
-            String[] segments = path.split("\\.");
-            if (segments.length > 0) {
-                ModelNode context = modelNode;
-                for (String segment : segments) {
-                    if (context.hasDefined(segment)) {
-                        context = context.get(segment);
-                    } else {
-                        break;
-                    }
-                    return context;
-                }
-            }
-        }
-        return undefined;
+        return ModelPath.of(path).get(modelNode);
     }
 
     /**
      * Tries to get a deeply nested boolean value from the specified model node. Nested paths must be separated with
-     * "/".
+     * ".".
      *
      * @param modelNode The model node to read from
-     * @param path      A path separated with "/"
+     * @param path      A path separated with "."
      * @return the boolean value or false.
      */
     public static boolean failSafeBoolean(ModelNode modelNode, String path) {
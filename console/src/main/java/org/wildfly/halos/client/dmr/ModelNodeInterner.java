@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.halos.client.dmr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hash-conses model nodes: Equal nodes are replaced by one shared instance.
+ * <p>
+ * Shared nodes must be treated as read-only. They're used as keys and shared between many parents: Modifying a
+ * shared node modifies it for all its parents and breaks the lookup of equal nodes. Shared nodes are not
+ * {@linkplain ModelNode#protect() protected}, so reading an undefined child with {@link ModelNode#get(String)} still
+ * returns an undefined node. Use {@link ModelNode#hasDefined(String)} before such reads anyway, since they add the
+ * child to the shared node.
+ */
+public class ModelNodeInterner {
+
+    private final Map<ModelNode, ModelNode> nodes;
+    private int hits;
+    private int misses;
+
+    public ModelNodeInterner() {
+        this.nodes = new HashMap<>();
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /** @return the shared instance which is equal to the node */
+    public ModelNode intern(ModelNode node) {
+        ModelNode shared = nodes.get(node);
+        if (shared != null) {
+            hits++;
+            return shared;
+        }
+        misses++;
+        nodes.put(node, node);
+        return node;
+    }
+
+    /**
+     * Replaces the children of {@code parent.get(name)} with their shared instances. Does nothing if {@code name} is
+     * not defined or not an object.
+     */
+    public void internChildren(ModelNode parent, String name) {
+        if (parent.hasDefined(name)) {
+            ModelNode node = parent.get(name);
+            if (node.getType() == ModelType.OBJECT) {
+                for (String key : node.keys()) {
+                    ModelNode child = node.get(key);
+                    ModelNode shared = intern(child);
+                    if (shared != child) {
+                        node.setChild(key, shared);
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return the number of nodes which were replaced by a shared instance */
+    public int hits() {
+        return hits;
+    }
+
+    /** @return the number of distinct nodes */
+    public int misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.halos.client.dmr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled path to a nested model node like {@code "operations.add.request-properties"}. The path is split once
+ * when it's compiled. Compiled paths are cached by their string form, so {@link #of(String)} is cheap to call in
+ * loops.
+ * <p>
+ * To read many nested nodes from one model node use {@link #batch(String...)}, which walks shared prefixes only once.
+ */
+public final class ModelPath {
+
+    private static final String SEPARATOR = ".";
+    private static final int CACHE_SIZE = 256;
+    private static final Map<String, ModelPath> CACHE = new LinkedHashMap<String, ModelPath>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ModelPath> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /** @return the compiled path for the specified path separated with "." */
+    public static ModelPath of(String path) {
+        String safePath = path == null ? "" : path;
+        ModelPath modelPath = CACHE.get(safePath);
+        if (modelPath == null) {
+            modelPath = new ModelPath(safePath, split(safePath));
+            CACHE.put(safePath, modelPath);
+        }
+        return modelPath;
+    }
+
+    /** @return a batch which reads the specified paths in one traversal */
+    public static Batch batch(String... paths) {
+        return new Batch(Arrays.stream(paths).map(ModelPath::of).toArray(ModelPath[]::new));
+    }
+
+    private static String[] split(String path) {
+        if (path.length() == 0) {
+            return new String[0];
+        }
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = path.indexOf(SEPARATOR, start)) != -1) {
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        segments.add(path.substring(start));
+        return segments.toArray(new String[0]);
+    }
+
+    private final String path;
+    private final String[] segments;
+
+    private ModelPath(String path, String[] segments) {
+        this.path = path;
+        this.segments = segments;
+    }
+
+    /**
+     * Walks the path starting at the specified model node.
+     *
+     * @return the nested node, or an undefined model node if a segment is not defined or the path is empty.
+     */
+    public ModelNode get(ModelNode modelNode) {
+        if (segments.length != 0 && modelNode != null) {
+            ModelNode context = modelNode;
+            for (String segment : segments) {
+                if (context.hasDefined(segment)) {
+                    context = context.get(segment);
+                } else {
+                    return new ModelNode();
+                }
+            }
+            return context;
+        }
+        return new ModelNode();
+    }
+
+    /** @return the number of segments */
+    public int size() {
+        return segments.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ModelPath)) {
+            return false;
+        }
+        ModelPath that = (ModelPath) o;
+        return path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    // ------------------------------------------------------ batch
+
+    /**
+     * Reads several paths from a model node in one traversal. The paths are merged into a tree, so common prefixes
+     * are walked only once. Create the batch once and reuse it for all nodes of the same structure.
+     */
+    public static class Batch {
+
+        private final ModelPath[] paths;
+        private final Step root;
+
+        Batch(ModelPath[] paths) {
+            this.paths = paths;
+            this.root = new Step(null);
+            for (int i = 0; i < paths.length; i++) {
+                Step step = root;
+                for (String segment : paths[i].segments) {
+                    step = step.child(segment);
+                }
+                // empty paths resolve to an undefined node, just like ModelPath.get()
+                if (step != root) {
+                    step.targets.add(i);
+                }
+            }
+        }
+
+        /**
+         * @return the nested nodes in the order of the paths passed to {@link ModelPath#batch(String...)}. Paths
+         * which cannot be resolved are returned as undefined model nodes.
+         */
+        public ModelNode[] extract(ModelNode modelNode) {
+            ModelNode[] result = new ModelNode[paths.length];
+            if (modelNode != null) {
+                walk(root, modelNode, result);
+            }
+            for (int i = 0; i < result.length; i++) {
+                if (result[i] == null) {
+                    result[i] = new ModelNode();
+                }
+            }
+            return result;
+        }
+
+        private void walk(Step step, ModelNode context, ModelNode[] result) {
+            for (int target : step.targets) {
+                result[target] = context;
+            }
+            for (Step child : step.children) {
+                if (context.hasDefined(child.segment)) {
+                    walk(child, context.get(child.segment), result);
+                }
+            }
+        }
+    }
+
+    private static class Step {
+
+        final String segment;
+        final List<Integer> targets;
+        final List<Step> children;
+
+        Step(String segment) {
+            this.segment = segment;
+            this.targets = new ArrayList<>();
+            this.children = new ArrayList<>();
+        }
+
+        Step child(String segment) {
+            for (Step child : children) {
+                if (child.segment.equals(segment)) {
+                    return child;
+                }
+            }
+            Step child = new Step(segment);
+            children.add(child);
+            return child;
+        }
+    }
+}
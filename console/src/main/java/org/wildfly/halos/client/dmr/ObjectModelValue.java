@@ -18,7 +18,6 @@ package org.wildfly.halos.client.dmr;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -33,7 +32,7 @@ class ObjectModelValue extends ModelValue {
 
     ObjectModelValue() {
         super(ModelType.OBJECT);
-        map = new LinkedHashMap<>();
+        map = new CompactObjectMap();
     }
 
     private ObjectModelValue(Map<String, ModelNode> map) {
@@ -44,9 +43,9 @@ class ObjectModelValue extends ModelValue {
     ObjectModelValue(DataInput in) {
         super(ModelType.OBJECT);
         int count = in.readInt();
-        LinkedHashMap<String, ModelNode> map = new LinkedHashMap<>();
+        CompactObjectMap map = new CompactObjectMap(count);
         for (int i = 0; i < count; i++) {
-            String key = in.readUTF();
+            String key = in.readKey();
             ModelNode value = new ModelNode();
             value.readExternal(in);
             map.put(key, value);
@@ -71,7 +70,7 @@ class ObjectModelValue extends ModelValue {
         for (ModelNode node : map.values()) {
             node.protect();
         }
-        return map.getClass() == LinkedHashMap.class ? new ObjectModelValue(Collections.unmodifiableMap(map)) : this;
+        return map instanceof CompactObjectMap ? new ObjectModelValue(Collections.unmodifiableMap(map)) : this;
     }
 
     @Override
@@ -93,6 +92,11 @@ class ObjectModelValue extends ModelValue {
         return newNode;
     }
 
+    /** Replaces the child with the given node instance (no copy!) */
+    void setChild(String name, ModelNode node) {
+        map.put(name, node);
+    }
+
     @Override
     ModelNode removeChild(String name) {
         if (name == null) {
@@ -160,7 +164,7 @@ class ObjectModelValue extends ModelValue {
     }
 
     ModelValue copy(boolean resolve) {
-        LinkedHashMap<String, ModelNode> newMap = new LinkedHashMap<>();
+        CompactObjectMap newMap = new CompactObjectMap(map.size());
         for (Map.Entry<String, ModelNode> entry : map.entrySet()) {
             newMap.put(entry.getKey(), resolve ? entry.getValue().resolve() : entry.getValue().clone());
         }
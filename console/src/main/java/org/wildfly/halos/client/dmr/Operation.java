@@ -39,7 +39,7 @@ public class Operation extends ModelNode {
         this.parameter.remove(ADDRESS);
         this.parameter.remove(OPERATION_HEADERS);
         this.header = modelNode.hasDefined(OPERATION_HEADERS) ? modelNode.get(OPERATION_HEADERS) : new ModelNode();
-        ModelNode roles = ModelNodeHelper.failSafeGet(modelNode, OPERATION_HEADERS + "/" + ROLES);
+        ModelNode roles = ModelNodeHelper.failSafeGet(modelNode, OPERATION_HEADERS + "." + ROLES);
         if (roles.isDefined()) {
             if (roles.getType() == ModelType.LIST) {
                 this.roles = roles.asList().stream().map(ModelNode::asString).collect(toSet());
@@ -65,7 +65,7 @@ public class Operation extends ModelNode {
 
         set(this.parameter.clone());
         get(OP).set(name);
-        get(ADDRESS).set(address);
+        get(ADDRESS).set(address.toModelNode());
         if (header.isDefined()) {
             get(OPERATION_HEADERS).set(header);
         }
@@ -97,7 +97,7 @@ public class Operation extends ModelNode {
     /** @return the string representation of the operation as used in the CLI */
     public String asCli() {
         StringBuilder builder = new StringBuilder();
-        if (address.isDefined() && !address.asList().isEmpty()) {
+        if (!address.isEmpty()) {
             builder.append(address);
         }
         builder.append(":").append(name);
@@ -44,7 +44,7 @@ class PropertyModelValue extends ModelValue {
     PropertyModelValue(DataInput in) {
         super(ModelType.PROPERTY);
         ModelNode node = new ModelNode();
-        String name = in.readUTF();
+        String name = in.readKey();
         node.readExternal(in);
         property = new Property(name, node);
     }
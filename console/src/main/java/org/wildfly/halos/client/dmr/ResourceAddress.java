@@ -16,121 +16,230 @@
 package org.wildfly.halos.client.dmr;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a fully qualified DMR address ready to be put into a DMR operation. The address consists of 0-n segments
  * with a name and a value for each segment.
+ * <p>
+ * Resource addresses are immutable. The segments are split once and stored in two arrays, so that segment access is
+ * O(1) and the hash code is computed only once. This makes addresses cheap to use as map keys. Methods like
+ * {@link #add(String, String)} return a new address. The conversion to and from the {@link ModelNode} list form is
+ * only done when an operation is serialized or a response is parsed (see {@link #toModelNode()} and
+ * {@link #ResourceAddress(ModelNode)}).
  */
-public class ResourceAddress extends ModelNode {
+public final class ResourceAddress {
+
+    private static final String[] NO_SEGMENTS = new String[0];
+    private static final ResourceAddress ROOT = new ResourceAddress(NO_SEGMENTS, NO_SEGMENTS);
+    private static final int PARSE_CACHE_SIZE = 512;
+    private static final Map<String, ResourceAddress> PARSE_CACHE = new LinkedHashMap<String, ResourceAddress>(
+            64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResourceAddress> eldest) {
+            return size() > PARSE_CACHE_SIZE;
+        }
+    };
 
     /** @return the empty (root) address */
     public static ResourceAddress root() {
-        // Do not replace this with a static constant! In most cases the returned address is modified somehow.
-        return new ResourceAddress();
+        return ROOT;
     }
 
-    /** Creates a new resource address from the specified string. */
+    /**
+     * Creates a new resource address from the specified string. Since addresses are immutable, the parsed addresses
+     * are kept in a bounded cache and shared between callers.
+     */
     public static ResourceAddress from(String address) {
         if (address == null || address.length() == 0) {
             throw new IllegalArgumentException("Address must not be null or empty");
         }
-        String safeAddress = address.startsWith("/") ? address.substring(1) : address;
-        ResourceAddress ra = new ResourceAddress();
-
-        String[] segments = safeAddress.split("/");
-        for (String segment : segments) {
-            if (segment != null && segment.length() != 0) {
-                String[] kv = segment.split("=");
-                if (kv.length == 2) {
-                    ra.add(kv[0], kv[1]);
-                }
-            }
+        ResourceAddress ra = PARSE_CACHE.get(address);
+        if (ra == null) {
+            ra = parse(address);
+            PARSE_CACHE.put(address, ra);
         }
         return ra;
     }
 
-    public ResourceAddress() {
-        setEmptyList();
+    private static ResourceAddress parse(String address) {
+        Builder builder = new Builder();
+        int length = address.length();
+        int start = address.charAt(0) == '/' ? 1 : 0;
+        while (start < length) {
+            int end = address.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            // same as segment.split("=").length == 2: exactly one '=' followed by a non-empty value
+            int equals = address.indexOf('=', start);
+            if (equals != -1 && equals < end - 1 && address.lastIndexOf('=', end - 1) == equals) {
+                builder.add(address.substring(start, equals), address.substring(equals + 1, end));
+            }
+            start = end + 1;
+        }
+        return builder.build();
     }
 
+    private final String[] names;
+    private final String[] values;
+    private int hash;
+    private String string;
+
+    /** Creates a new resource address from the list of properties used in DMR operations and results. */
     public ResourceAddress(ModelNode address) {
-        set(address);
+        if (address != null && address.isDefined() && !address.asList().isEmpty()) {
+            List<Property> properties = address.asPropertyList();
+            this.names = new String[properties.size()];
+            this.values = new String[properties.size()];
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                names[i] = property.getName();
+                values[i] = property.getValue().asString();
+            }
+        } else {
+            this.names = NO_SEGMENTS;
+            this.values = NO_SEGMENTS;
+        }
     }
 
-    /**
-     * Adds the specified segment to this address.
-     *
-     * @param propertyName  the property name
-     * @param propertyValue the property value
-     * @return this address with the specified segment added
-     */
-    public ResourceAddress add(String propertyName, String propertyValue) {
-        add().set(propertyName, propertyValue);
-        return this;
+    private ResourceAddress(String[] names, String[] values) {
+        this.names = names;
+        this.values = values;
     }
 
-    /**
-     * Adds the specified address to this address.
-     *
-     * @param address The address to add.
-     * @return this address with the specified address added
-     */
-    public ResourceAddress add(ResourceAddress address) {
-        if (address != null) {
-            for (Property property : address.asPropertyList()) {
-                add(property.getName(), property.getValue().asString());
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ResourceAddress)) {
+            return false;
+        }
+        ResourceAddress that = (ResourceAddress) o;
+        return hashCode() == that.hashCode() &&
+                Arrays.equals(names, that.names) &&
+                Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0 && names.length != 0) {
+            h = 31 * Arrays.hashCode(names) + Arrays.hashCode(values);
+            hash = h;
+        }
+        return h;
+    }
+
+    /** @return the address as string */
+    @Override
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < names.length; i++) {
+                builder.append("/").append(names[i]).append("=").append(values[i]);
             }
+            s = builder.toString();
+            string = s;
+        }
+        return s;
+    }
+
+    /** @return the address as list of properties as used in DMR operations */
+    public ModelNode toModelNode() {
+        ModelNode modelNode = new ModelNode();
+        modelNode.setEmptyList();
+        for (int i = 0; i < names.length; i++) {
+            modelNode.add(names[i], values[i]);
         }
-        return this;
+        return modelNode;
+    }
+
+    // ------------------------------------------------------ segments
+
+    /** @return the number of segments. */
+    public int size() {
+        return names.length;
+    }
+
+    /** @return whether this address is empty. */
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    /** @return the name of the segment at the specified index */
+    public String name(int index) {
+        return names[index];
+    }
+
+    /** @return the value of the segment at the specified index */
+    public String value(int index) {
+        return values[index];
     }
 
     /** @return the value of the first segment or null if this address is empty. */
     public String firstValue() {
-        List<Property> properties = asPropertyList();
-        if (!properties.isEmpty()) {
-            return properties.get(0).getValue().asString();
-        }
-        return null;
+        return names.length != 0 ? values[0] : null;
     }
 
     /** @return the name of the last segment or null if this address is empty. */
     public String lastName() {
-        List<Property> properties = asPropertyList();
-        if (!properties.isEmpty()) {
-            return properties.get(properties.size() - 1).getName();
-        }
-        return null;
+        return names.length != 0 ? names[names.length - 1] : null;
     }
 
     /** @return the value of the last segment or null if this address is empty. */
     public String lastValue() {
-        List<Property> properties = asPropertyList();
-        if (!properties.isEmpty()) {
-            return properties.get(properties.size() - 1).getValue().asString();
-        }
-        return null;
+        return names.length != 0 ? values[values.length - 1] : null;
     }
 
-    /** @return the parent address or the root address if this address has no parent. */
-    public ResourceAddress getParent() {
-        if (this.equals(root()) || asList().isEmpty()) {
-            return this;
-        }
-        List<ModelNode> parent = new ArrayList<>(asList());
-        parent.remove(parent.size() - 1);
-        return new ResourceAddress(new ModelNode().set(parent));
+    // ------------------------------------------------------ derived addresses
+
+    /**
+     * Adds the specified segment to this address.
+     *
+     * @param propertyName  the property name
+     * @param propertyValue the property value
+     * @return a new address with the specified segment added
+     */
+    public ResourceAddress add(String propertyName, String propertyValue) {
+        String[] newNames = Arrays.copyOf(names, names.length + 1);
+        String[] newValues = Arrays.copyOf(values, values.length + 1);
+        newNames[names.length] = propertyName;
+        newValues[values.length] = propertyValue;
+        return new ResourceAddress(newNames, newValues);
     }
 
-    /** @return the number of segments. */
-    public int size() {
-        return isDefined() ? asList().size() : 0;
+    /**
+     * Adds the specified address to this address.
+     *
+     * @param address The address to add.
+     * @return a new address with the specified address added
+     */
+    public ResourceAddress add(ResourceAddress address) {
+        if (address == null || address.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return address;
+        }
+        String[] newNames = Arrays.copyOf(names, names.length + address.names.length);
+        String[] newValues = Arrays.copyOf(values, values.length + address.values.length);
+        System.arraycopy(address.names, 0, newNames, names.length, address.names.length);
+        System.arraycopy(address.values, 0, newValues, values.length, address.values.length);
+        return new ResourceAddress(newNames, newValues);
     }
 
-    /** @return whether this address is empty. */
-    public boolean isEmpty() {
-        return size() == 0;
+    /** @return the parent address or the root address if this address has no parent. */
+    public ResourceAddress getParent() {
+        if (names.length <= 1) {
+            return ROOT;
+        }
+        return new ResourceAddress(Arrays.copyOf(names, names.length - 1), Arrays.copyOf(values, values.length - 1));
     }
 
     /**
@@ -138,34 +247,42 @@ public class ResourceAddress extends ModelNode {
      *
      * @param name     The name of the segment.
      * @param newValue The new value.
-     * @return this address containing the replaced value
+     * @return a new address containing the replaced value
      */
     public ResourceAddress replaceValue(String name, String newValue) {
-        ResourceAddress newAddress = new ResourceAddress();
-        for (Property property : asPropertyList()) {
-            if (name.equals(property.getName())) {
-                newAddress.add(name, newValue);
-            } else {
-                newAddress.add(property.getName(), property.getValue().asString());
+        String[] newValues = values.clone();
+        for (int i = 0; i < names.length; i++) {
+            if (name.equals(names[i])) {
+                newValues[i] = newValue;
             }
         }
-        return newAddress;
+        return new ResourceAddress(names, newValues);
     }
 
-    /** @return the address as string */
-    @Override
-    public String toString() {
-        StringBuilder builder = new StringBuilder();
-        if (isDefined()) {
-            builder.append("/");
-            for (Iterator<Property> iterator = asPropertyList().iterator(); iterator.hasNext(); ) {
-                Property segment = iterator.next();
-                builder.append(segment.getName()).append("=").append(segment.getValue().asString());
-                if (iterator.hasNext()) {
-                    builder.append("/");
-                }
+    // ------------------------------------------------------ builder
+
+    /** Builds an address segment by segment without copying the segments for each step. */
+    public static class Builder {
+
+        private final List<String> names;
+        private final List<String> values;
+
+        public Builder() {
+            this.names = new ArrayList<>();
+            this.values = new ArrayList<>();
+        }
+
+        public Builder add(String name, String value) {
+            names.add(name);
+            values.add(value);
+            return this;
+        }
+
+        public ResourceAddress build() {
+            if (names.isEmpty()) {
+                return ROOT;
             }
+            return new ResourceAddress(names.toArray(NO_SEGMENTS), values.toArray(NO_SEGMENTS));
         }
-        return builder.toString();
     }
 }
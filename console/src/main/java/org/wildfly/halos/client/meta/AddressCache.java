@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.halos.client.meta;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.wildfly.halos.client.dmr.ResourceAddress;
+import org.wildfly.halos.client.util.Logger;
+import org.wildfly.halos.client.util.LruCache;
+
+/**
+ * Bounded cache for metadata keyed by resource addresses. The values are kept in a {@link LruCache}. The keys are
+ * additionally indexed in a trie over the address segments, so that a lookup which has no exact entry can be answered
+ * by the most specific entry which matches the address with wildcards.
+ * <p>
+ * An entry for {@code /subsystem=undertow/server=*} e.g. (as created by a recursive r-r-d of {@code
+ * /subsystem=undertow}) answers a lookup of {@code /subsystem=undertow/server=default-server}. If several entries
+ * match, the segments are compared from left to right and an exact segment wins over a wildcard segment. A wildcard
+ * in the lookup address only matches a wildcard entry.
+ */
+class AddressCache<V> {
+
+    private static final String WILDCARD = "*";
+
+    private final LruCache<ResourceAddress, V> cache;
+    private final Node root;
+    private long wildcardHits;
+
+    AddressCache(int maximumSize, String name) {
+        this.cache = new LruCache<>(maximumSize, (address, value, cause) -> {
+            if (cause != LruCache.RemovalCause.REPLACED) {
+                unindex(address);
+            }
+            Logger.debug("Remove {} from {} cache: {}", address, name, cause);
+        });
+        this.root = new Node();
+        this.wildcardHits = 0;
+    }
+
+    /** @return the value for the address or the most specific wildcard match, {@code null} if there's no match */
+    V get(ResourceAddress address) {
+        // probe without touching the statistics, so that each lookup counts as exactly one hit or miss
+        ResourceAddress key = address;
+        if (!cache.containsKey(address)) {
+            ResourceAddress match = match(root, address, 0);
+            if (match != null) {
+                key = match;
+            }
+        }
+        V value = cache.get(key);
+        if (value != null && key != address) {
+            wildcardHits++;
+        }
+        return value;
+    }
+
+    void put(ResourceAddress address, V value) {
+        cache.put(address, value);
+        index(address);
+    }
+
+    void putAll(Map<ResourceAddress, ? extends V> entries) {
+        for (Map.Entry<ResourceAddress, ? extends V> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** @return how many lookups were answered by a wildcard entry */
+    long wildcardHits() {
+        return wildcardHits;
+    }
+
+    LruCache.Statistics statistics() {
+        return cache.statistics();
+    }
+
+    // ------------------------------------------------------ trie
+
+    private void index(ResourceAddress address) {
+        Node node = root;
+        for (int i = 0; i < address.size(); i++) {
+            node = node.children.computeIfAbsent(segment(address.name(i), address.value(i)), key -> new Node());
+        }
+        node.address = address;
+    }
+
+    private void unindex(ResourceAddress address) {
+        unindex(root, address, 0);
+    }
+
+    /** @return whether the node can be pruned */
+    private boolean unindex(Node node, ResourceAddress address, int index) {
+        if (index == address.size()) {
+            node.address = null;
+        } else {
+            String segment = segment(address.name(index), address.value(index));
+            Node child = node.children.get(segment);
+            if (child != null && unindex(child, address, index + 1)) {
+                node.children.remove(segment);
+            }
+        }
+        return node.address == null && node.children.isEmpty();
+    }
+
+    /** Depth first search which tries the exact segment before the wildcard segment. */
+    private ResourceAddress match(Node node, ResourceAddress address, int index) {
+        if (index == address.size()) {
+            return node.address;
+        }
+        String name = address.name(index);
+        String value = address.value(index);
+        Node exact = node.children.get(segment(name, value));
+        if (exact != null) {
+            ResourceAddress match = match(exact, address, index + 1);
+            if (match != null) {
+                return match;
+            }
+        }
+        if (!WILDCARD.equals(value)) {
+            Node wildcard = node.children.get(segment(name, WILDCARD));
+            if (wildcard != null) {
+                return match(wildcard, address, index + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String segment(String name, String value) {
+        return name + "=" + value;
+    }
+
+    private static class Node {
+
+        final Map<String, Node> children = new HashMap<>();
+        ResourceAddress address;
+    }
+}
@@ -18,11 +18,9 @@ package org.wildfly.halos.client.meta;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 
-import org.wildfly.halos.client.dmr.ModelNode;
 import org.wildfly.halos.client.dmr.ResourceAddress;
 
 import static java.util.stream.Collectors.joining;
@@ -50,14 +48,19 @@ import static java.util.stream.Collectors.joining;
  * </pre>
  * <p>
  * To get a fully qualified address from an address template use the method {@link #resolve(StatementContext)}.
+ * <p>
+ * Resolved addresses are cached per resolver and statement context. A cached address is reused as long as the
+ * placeholders referenced by this template keep their {@linkplain StatementContext#version(String) version}.
  */
 public final class AddressTemplate implements Iterable<AddressTemplate.Segment> {
 
+    private static final String[] NO_PLACEHOLDERS = new String[0];
+
     /** The root template */
     public static final AddressTemplate ROOT = AddressTemplate.of("/");
     public static final String EQUALS = "=";
-    private SegmentResolver STATEMENT_CONTEXT_RESOLVER = (context, template, segment, first, last, index) ->
-            context.resolve(segment);
+    private static final SegmentResolver STATEMENT_CONTEXT_RESOLVER =
+            (context, template, segment, first, last, index) -> context.resolve(segment);
 
     // ------------------------------------------------------ encode / decode
 
@@ -93,24 +96,23 @@ public final class AddressTemplate implements Iterable<AddressTemplate.Segment>
     // ------------------------------------------------------ template instance
 
     public final String template;
-    private final LinkedList<Segment> segments;
-
-    private AddressTemplate(List<Segment> segments) {
-        this.segments = new LinkedList<>(segments);
-        this.template = join(segments);
-    }
+    private final Segment[] segments;
+    private final String[] placeholders;
+    private Resolution[] resolutions;
 
     private AddressTemplate(String template) {
         assert template != null : "template must not be null";
         this.segments = parse(template);
-        this.template = join(segments);
+        this.placeholders = placeholders(segments);
+        this.template = join(Arrays.asList(segments));
+        this.resolutions = new Resolution[0];
     }
 
-    private LinkedList<Segment> parse(String template) {
-        LinkedList<Segment> segments = new LinkedList<>();
+    private Segment[] parse(String template) {
+        List<Segment> segments = new ArrayList<>();
 
         if (template.equals("/")) {
-            return segments;
+            return new Segment[0];
         }
 
         StringTokenizer tok = new StringTokenizer(template);
@@ -123,7 +125,17 @@ public final class AddressTemplate implements Iterable<AddressTemplate.Segment>
                 segments.add(new Segment(nextToken));
             }
         }
-        return segments;
+        return segments.toArray(new Segment[0]);
+    }
+
+    private String[] placeholders(Segment[] segments) {
+        List<String> names = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.containsPlaceholder()) {
+                names.add(segment.placeholder());
+            }
+        }
+        return names.isEmpty() ? NO_PLACEHOLDERS : names.toArray(NO_PLACEHOLDERS);
     }
 
     private String join(List<Segment> segments) {
@@ -185,8 +197,10 @@ public final class AddressTemplate implements Iterable<AddressTemplate.Segment>
      *                                   || fromIndex &gt; toIndex</tt>)
      */
     public AddressTemplate subTemplate(int fromIndex, int toIndex) {
-        LinkedList<Segment> subSegments = new LinkedList<>(this.segments.subList(fromIndex, toIndex));
-        return AddressTemplate.of(join(subSegments));
+        if (fromIndex < 0 || toIndex > segments.length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+        }
+        return AddressTemplate.of(join(Arrays.asList(segments).subList(fromIndex, toIndex)));
     }
 
     /** @return the parent address template or the root template */
@@ -202,33 +216,33 @@ public final class AddressTemplate implements Iterable<AddressTemplate.Segment>
 
     /** @return the first segment or null if this address template is empty. */
     public Segment first() {
-        if (!segments.isEmpty() && segments.getFirst().hasKey()) {
-            return segments.getFirst();
+        if (segments.length != 0 && segments[0].hasKey()) {
+            return segments[0];
         }
         return null;
     }
 
     /** @return the last segment or null if this address template is empty. */
     public Segment last() {
-        if (!segments.isEmpty() && segments.getFirst().hasKey()) {
-            return segments.getLast();
+        if (segments.length != 0 && segments[0].hasKey()) {
+            return segments[segments.length - 1];
         }
         return null;
     }
 
     /** @return true if this template contains no tokens, false otherwise */
     public boolean isEmpty() {
-        return segments.isEmpty();
+        return segments.length == 0;
     }
 
     /** @return the number of tokens */
     public int size() {
-        return segments.size();
+        return segments.length;
     }
 
     @Override
     public Iterator<Segment> iterator() {
-        return segments.iterator();
+        return Arrays.asList(segments).iterator();
     }
 
     // ------------------------------------------------------ wildcards & resolve
@@ -263,16 +277,34 @@ public final class AddressTemplate implements Iterable<AddressTemplate.Segment>
     private ResourceAddress resolveInternal(StatementContext context, SegmentResolver resolver) {
         if (isEmpty()) {
             return ResourceAddress.root();
-        } else {
-            ModelNode model = new ModelNode();
-            for (int i = 0; i < segments.size(); i++) {
-                Segment segment = segments.get(i);
-                Segment resolved = resolver.resolve(context, this, segment,
-                        i == 0, i == segments.size() - 1, i);
-                model.add(resolved.key, decodeValue(segment.value));
+        }
+
+        Resolution resolution = null;
+        for (Resolution r : resolutions) {
+            if (r.resolver == resolver && r.context == context) {
+                resolution = r;
+                break;
             }
-            return new ResourceAddress(model);
         }
+        if (resolution != null && resolution.isValid()) {
+            return resolution.address;
+        }
+
+        ResourceAddress.Builder builder = new ResourceAddress.Builder();
+        for (int i = 0; i < segments.length; i++) {
+            Segment resolved = resolver.resolve(context, this, segments[i], i == 0, i == segments.length - 1, i);
+            builder.add(resolved.key, decodeValue(segments[i].value));
+        }
+        ResourceAddress address = builder.build();
+        if (resolution != null) {
+            resolution.update(address);
+        } else {
+            resolution = new Resolution(context, resolver);
+            resolution.update(address);
+            resolutions = Arrays.copyOf(resolutions, resolutions.length + 1);
+            resolutions[resolutions.length - 1] = resolution;
+        }
+        return address;
     }
 
     // ------------------------------------------------------ inner classes
@@ -316,6 +348,37 @@ public final class AddressTemplate implements Iterable<AddressTemplate.Segment>
         }
     }
 
+    /** Cached result of resolving this template with a given resolver and statement context. */
+    private class Resolution {
+
+        final StatementContext context;
+        final SegmentResolver resolver;
+        final int[] versions;
+        ResourceAddress address;
+
+        Resolution(StatementContext context, SegmentResolver resolver) {
+            this.context = context;
+            this.resolver = resolver;
+            this.versions = new int[placeholders.length];
+        }
+
+        boolean isValid() {
+            for (int i = 0; i < placeholders.length; i++) {
+                if (versions[i] != context.version(placeholders[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void update(ResourceAddress address) {
+            this.address = address;
+            for (int i = 0; i < placeholders.length; i++) {
+                versions[i] = context.version(placeholders[i]);
+            }
+        }
+    }
+
     private static class StringTokenizer {
 
         private final String delim;
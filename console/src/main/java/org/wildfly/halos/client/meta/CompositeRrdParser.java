@@ -15,13 +15,11 @@
  */
 package org.wildfly.halos.client.meta;
 
-import java.util.List;
-
+import elemental2.promise.Promise;
 import org.wildfly.halos.client.dmr.CompositeResult;
 import org.wildfly.halos.client.dmr.ModelNode;
 import org.wildfly.halos.client.dmr.ModelType;
 import org.wildfly.halos.client.dmr.Operation;
-import org.wildfly.halos.client.dmr.Property;
 import org.wildfly.halos.client.dmr.ResourceAddress;
 import org.wildfly.halos.client.util.Logger;
 
@@ -29,16 +27,47 @@ import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
 
 class CompositeRrdParser {
 
-    private final RrdResult rrdResult;
+    private final SingleRrdParser parser;
 
     public CompositeRrdParser() {
-        rrdResult = new RrdResult();
+        parser = new SingleRrdParser(new RrdResult());
     }
 
     RrdResult parse(CompositeResult compositeResult) {
+        enqueue(compositeResult);
+        return parser.parse();
+    }
+
+    /** Parses the composite result in time slices, see {@link SingleRrdParser#parseAsync()}. */
+    Promise<RrdResult> parseAsync(CompositeResult compositeResult) {
+        enqueue(compositeResult);
+        return parser.parseAsync();
+    }
+
+    /** Parses all enqueued composite results in time slices, see {@link SingleRrdParser#parseAsync()}. */
+    Promise<RrdResult> parseAsync() {
+        return parser.parseAsync();
+    }
+
+    /** Adds the composite result to the work queue w/o parsing it. */
+    void enqueue(CompositeResult compositeResult) {
+        enqueue(compositeResult, false);
+    }
+
+    /**
+     * Adds the composite result to the work queue w/o parsing it. If {@code optional} is {@code true}, failed steps
+     * are skipped, otherwise they lead to a {@link MetadataException}.
+     */
+    void enqueue(CompositeResult compositeResult, boolean optional) {
         int index = 0;
         for (ModelNode step : compositeResult) {
             if (step.isFailure()) {
+                if (optional) {
+                    Logger.debug("Skip failed optional step 'step-{}' in composite rrd result: {}", index + 1,
+                            step.getFailureDescription());
+                    index++;
+                    continue;
+                }
                 throw new MetadataException("Failed step 'step-" + (index + 1) + "' in composite rrd result: " +
                         step.getFailureDescription());
             }
@@ -54,18 +83,17 @@ class CompositeRrdParser {
                         ResourceAddress operationAddress = operationAddress(compositeResult, index);
                         ResourceAddress resultAddress = new ResourceAddress(modelNode.get(ADDRESS));
                         ResourceAddress resolvedAddress = makeFqAddress(operationAddress, resultAddress);
-                        new SingleRrdParser(rrdResult).parse(resolvedAddress, result, recursive);
+                        parser.enqueue(resolvedAddress, result, recursive);
                     }
                 }
 
             } else {
                 // a single rrd result
                 ResourceAddress address = operationAddress(compositeResult, index);
-                new SingleRrdParser(rrdResult).parse(address, stepResult, recursive);
+                parser.enqueue(address, stepResult, recursive);
             }
             index++;
         }
-        return rrdResult;
     }
 
     private static ResourceAddress operationAddress(CompositeResult compositeResult, int index) {
@@ -78,19 +106,17 @@ class CompositeRrdParser {
 
     private static ResourceAddress makeFqAddress(ResourceAddress operationAddress, ResourceAddress resultAddress) {
         ResourceAddress resolved = resultAddress;
-        List<Property> operationSegments = operationAddress.asPropertyList();
-        List<Property> resultSegments = resultAddress.asPropertyList();
 
         // For rrd operations against running servers using wildcards like /host=master/server=server-one/interface=*
         // the result does *not* contain absolute addresses. Since we need them in the registries,
         // this method fixes this corner case.
-        if (operationSegments.size() > 2 &&
-                operationSegments.size() == resultSegments.size() + 2 &&
-                HOST.equals(operationSegments.get(0).getName()) &&
-                SERVER.equals(operationSegments.get(1).getName())) {
-            resolved = new ResourceAddress()
-                    .add(HOST, operationSegments.get(0).getValue().asString())
-                    .add(SERVER, operationSegments.get(1).getValue().asString())
+        if (operationAddress.size() > 2 &&
+                operationAddress.size() == resultAddress.size() + 2 &&
+                HOST.equals(operationAddress.name(0)) &&
+                SERVER.equals(operationAddress.name(1))) {
+            resolved = ResourceAddress.root()
+                    .add(HOST, operationAddress.value(0))
+                    .add(SERVER, operationAddress.value(1))
                     .add(resultAddress);
             Logger.debug("Adjust result address '{}' -> '{}'", resultAddress, resolved);
         }
@@ -17,6 +17,7 @@ package org.wildfly.halos.client.meta;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +26,7 @@ import javax.inject.Singleton;
 
 import elemental2.promise.Promise;
 import jsinterop.base.Js;
+import org.wildfly.halos.client.config.Environment;
 import org.wildfly.halos.client.dmr.Composite;
 import org.wildfly.halos.client.dmr.CompositeResult;
 import org.wildfly.halos.client.dmr.Dispatcher;
@@ -33,52 +35,72 @@ import org.wildfly.halos.client.dmr.Operation;
 import org.wildfly.halos.client.dmr.ResourceAddress;
 import org.wildfly.halos.client.meta.capability.Capabilities;
 import org.wildfly.halos.client.meta.description.ResourceDescription;
+import org.wildfly.halos.client.meta.security.AuthorisationDecision;
+import org.wildfly.halos.client.meta.security.ElementGuard;
 import org.wildfly.halos.client.meta.security.SecurityContext;
-import org.wildfly.halos.client.util.Lists;
+import org.wildfly.halos.client.util.Logger;
+import org.wildfly.halos.client.util.LruCache;
 
+import static elemental2.dom.DomGlobal.document;
+import static java.util.Collections.singleton;
 import static java.util.stream.Collectors.toList;
 import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
 
-/** Registry for resource {@link Metadata}. */
+/**
+ * Registry for resource {@link Metadata}.
+ * <p>
+ * Metadata is looked up in memory first, then in the persistent {@link MetadataStore}. Resource descriptions from the
+ * persistent store are served immediately and revalidated in the background (stale-while-revalidate). Security
+ * contexts are not persisted, so they're always read using r-r-d operations, just like anything else missing in
+ * both places.
+ * <p>
+ * Concurrent lookups of the same (resolved) address and scope share one pending request.
+ * <p>
+ * Resource descriptions and security contexts are cached in {@link AddressCache}s. A lookup without an exact entry
+ * is answered by the most specific wildcard entry, so the results of a recursive r-r-d also serve templates of
+ * specific child resources.
+ * <p>
+ * When the security context of a template is added or replaced, the guarded elements in the document whose
+ * constraints use this template are re-evaluated (see {@link ElementGuard}).
+ */
 @Singleton
 public class MetadataRegistry {
 
     private static final int RRD_DEPTH = 3;
-    private static final int BATCH_SIZE = 3;
-    // private static final int RESOURCE_DESCRIPTION_SIZE = 250;
-    // private static final int SECURITY_CONTEXT_SIZE = 300;
     private static final String DEFAULT_LOCALE = "en";
     private static final CompositeResult OPTIONAL_COMPOSITE_RESULT = new CompositeResult(new Composite(),
             new ModelNode());
 
     private final Dispatcher dispatcher;
+    private final Environment environment;
     private final StatementContext statementContext;
     private final SegmentResolvers resolvers;
     private final Capabilities capabilities;
-    private final Map<ResourceAddress, ResourceDescription> resourceDescriptions;
-    private final Map<ResourceAddress, SecurityContext> securityContexts;
+    private final MetadataStore store;
+    private final RrdBatcher batcher;
+    private final LruCache<AddressTemplate, Boolean> revalidated;
+    private final Map<String, Promise<Metadata>> pending;
+    private final AddressCache<ResourceDescription> resourceDescriptions;
+    private final AddressCache<SecurityContext> securityContexts;
+    private int coalescedFinds;
+    private int coalescedFindAlls;
 
     @Inject
     public MetadataRegistry(Dispatcher dispatcher, StatementContext statementContext, SegmentResolvers resolvers,
-            Capabilities capabilities) {
+            Capabilities capabilities, MetadataStore store, Environment environment) {
         this.dispatcher = dispatcher;
+        this.environment = environment;
         this.statementContext = statementContext;
         this.resolvers = resolvers;
         this.capabilities = capabilities;
-        this.resourceDescriptions = new HashMap<>();
-        // this.resourceDescriptions = CacheBuilder.newBuilder()
-        //         .maximumSize(RESOURCE_DESCRIPTION_SIZE)
-        //         .recordStats()
-        //         .removalListener(notification -> logger.debug("Remove {} from resource description cache: {}",
-        //                 notification.getKey(), notification.getCause()))
-        //         .build();
-        this.securityContexts = new HashMap<>();
-        // this.securityContexts = CacheBuilder.newBuilder()
-        //         .maximumSize(SECURITY_CONTEXT_SIZE)
-        //         .recordStats()
-        //         .removalListener(notification -> logger.debug("Remove {} from security context cache: {}",
-        //                 notification.getKey(), notification.getCause()))
-        //         .build();
+        this.store = store;
+        this.batcher = new RrdBatcher(dispatcher);
+        // templates evicted from here are revalidated again, like the descriptions evicted from the in-memory cache
+        this.revalidated = new LruCache<>(environment.resourceDescriptionCacheSize);
+        this.pending = new HashMap<>();
+        this.resourceDescriptions = new AddressCache<>(environment.resourceDescriptionCacheSize,
+                "resource description");
+        this.securityContexts = new AddressCache<>(environment.securityContextCacheSize, "security context");
     }
 
     // ------------------------------------------------------ find all
@@ -90,47 +112,111 @@ public class MetadataRegistry {
             return Promise.resolve(result);
 
         } else {
-            List<Operation> operations = new ArrayList<>();
-            List<Operation> optionalOperations = new ArrayList<>();
+            // split into templates which are already pending and templates which need to be looked up
+            MetadataRequest missing = new MetadataRequest();
+            Map<AddressTemplate, Promise<Metadata>> shared = new LinkedHashMap<>();
             request.forEach((template, scope) -> {
-                Metadata metadata = result.get(template);
-                if (!allPresent(metadata, scope)) {
-                    if (scope.optional()) {
-                        optionalOperations.addAll(rrdOperations(template, metadata, scope));
+                if (!allPresent(result.get(template), scope)) {
+                    Promise<Metadata> promise = pending.get(pendingKey(template, scope));
+                    if (promise != null) {
+                        shared.put(template, promise);
                     } else {
-                        operations.addAll(rrdOperations(template, metadata, scope));
+                        missing.add(template, scope);
                     }
                 }
             });
-            if (operations.isEmpty() && optionalOperations.isEmpty()) {
-                throw new MetadataException("Unable to create r-r-d operations for " + request);
+
+            Promise<MetadataResult> promise;
+            if (missing.isEmpty()) {
+                promise = Promise.resolve(result);
+            } else {
+                Promise<MetadataResult> lookup = store.open().then(available -> {
+                    if (available) {
+                        missing.forEach((template, scope) -> {
+                            restore(template, scope);
+                            result.put(template, failSafeGet(template));
+                        });
+                        if (allPresent(missing, result)) {
+                            return Promise.resolve(result);
+                        }
+                    }
+                    return readAll(missing, result);
+                });
+                missing.forEach((template, scope) -> track(pendingKey(template, scope),
+                        lookup.then(r -> Promise.resolve(r.get(template)))));
+                promise = lookup;
             }
-            List<Promise<CompositeResult>> promises = new ArrayList<>();
-            List<List<Operation>> piles = Lists.partition(operations, BATCH_SIZE);
-            piles.stream()
-                    .map(Composite::new)
-                    .map(dispatcher::execute)
-                    .forEach(promises::add);
-            optionalOperations.stream()
-                    .map(operation -> dispatcher
-                            .execute(new Composite(operations))
-                            .catch_(error -> Promise.resolve(OPTIONAL_COMPOSITE_RESULT)))
-                    .forEach(promises::add);
-            // Use object to avoid ClassCastException, since CompositeResult is not a JS type!
-            Promise<Object>[] objects = promises.toArray(new Promise[0]);
-            return Promise.all(objects).then(results -> {
-                CompositeResult[] compositeResults = Js.uncheckedCast(results);
-                for (CompositeResult compositeResult : compositeResults) {
-                    if (compositeResult != OPTIONAL_COMPOSITE_RESULT) {
-                        RrdResult rrdResult = new CompositeRrdParser().parse(compositeResult);
-                        resourceDescriptions.putAll(rrdResult.resourceDescriptions);
-                        securityContexts.putAll(rrdResult.securityContexts);
+
+            if (shared.isEmpty()) {
+                return promise;
+            } else {
+                coalescedFindAlls++;
+                Logger.debug("Share {} pending lookup(s) for {}", shared.size(), request);
+                Promise<Object>[] objects = shared.values().toArray(new Promise[0]);
+                return promise.then(r -> Promise.all(objects).then(values -> {
+                    Metadata[] metadata = Js.uncheckedCast(values);
+                    int index = 0;
+                    for (AddressTemplate template : shared.keySet()) {
+                        r.put(template, metadata[index++]);
                     }
+                    return Promise.resolve(r);
+                }));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Promise<MetadataResult> readAll(MetadataRequest request, MetadataResult result) {
+        List<Operation> operations = new ArrayList<>();
+        List<Operation> optionalOperations = new ArrayList<>();
+        request.forEach((template, scope) -> {
+            Metadata metadata = result.get(template);
+            if (!allPresent(metadata, scope)) {
+                if (scope.optional()) {
+                    optionalOperations.addAll(rrdOperations(template, metadata, scope));
+                } else {
+                    operations.addAll(rrdOperations(template, metadata, scope));
                 }
-                result.replaceAll((template, metadata) -> get(template)); // use get now instead of failSafeGet
+            }
+        });
+        if (operations.isEmpty() && optionalOperations.isEmpty()) {
+            throw new MetadataException("Unable to create r-r-d operations for " + request);
+        }
+        List<Promise<CompositeResult>> promises = new ArrayList<>();
+        batcher.batches(operations).stream()
+                .map(batcher::execute)
+                .forEach(promises::add);
+        int optionalIndex = promises.size();
+        if (!optionalOperations.isEmpty()) {
+            // all optional operations in one composite: failed steps are skipped, a failed request is ignored
+            promises.add(batcher.execute(new Composite(optionalOperations))
+                    .catch_(error -> Promise.resolve(OPTIONAL_COMPOSITE_RESULT)));
+        }
+        // Use object to avoid ClassCastException, since CompositeResult is not a JS type!
+        Promise<Object>[] objects = promises.toArray(new Promise[0]);
+        return Promise.all(objects).then(results -> {
+            CompositeResult[] compositeResults = Js.uncheckedCast(results);
+            CompositeRrdParser parser = new CompositeRrdParser();
+            for (int i = 0; i < compositeResults.length; i++) {
+                if (compositeResults[i] != OPTIONAL_COMPOSITE_RESULT) {
+                    parser.enqueue(compositeResults[i], i >= optionalIndex);
+                }
+            }
+            return parser.parseAsync().then(rrdResult -> {
+                update(rrdResult);
+                List<Metadata> changed = new ArrayList<>();
+                result.replaceAll((template, metadata) -> {
+                    Metadata updated = get(template); // use get now instead of failSafeGet
+                    if (updated.securityContext != metadata.securityContext) {
+                        changed.add(updated);
+                    }
+                    return updated;
+                });
+                result.forEach((template, metadata) -> store.put(metadata));
+                changed.forEach(this::guard);
                 return Promise.resolve(result);
             });
-        }
+        });
     }
 
     // ------------------------------------------------------ find
@@ -145,26 +231,43 @@ public class MetadataRegistry {
             return Promise.resolve(metadata);
 
         } else {
-            List<Operation> operations = rrdOperations(template, metadata, scope);
-            if (operations.isEmpty()) {
-                throw new MetadataException("Unable to create r-r-d operation for " + scope.andTemplate(template));
-            } else if (operations.size() == 1) {
-                Operation operation = operations.get(0);
-                return dispatcher.execute(operation).then(modelNode -> {
-                    RrdResult rrdResult = new SingleRrdParser(new RrdResult())
-                            .parse(operation.address, modelNode, scope.recursive());
-                    resourceDescriptions.putAll(rrdResult.resourceDescriptions);
-                    securityContexts.putAll(rrdResult.securityContexts);
-                    return Promise.resolve(get(template)); // use get now instead of failSafeGet
-                });
-            } else {
-                return dispatcher.execute(new Composite(operations)).then(compositeResult -> {
-                    RrdResult rrdResult = new CompositeRrdParser().parse(compositeResult);
-                    resourceDescriptions.putAll(rrdResult.resourceDescriptions);
-                    securityContexts.putAll(rrdResult.securityContexts);
-                    return Promise.resolve(get(template)); // use get now instead of failSafeGet
-                });
+            String key = pendingKey(template, scope);
+            Promise<Metadata> promise = pending.get(key);
+            if (promise != null) {
+                coalescedFinds++;
+                Logger.debug("Share pending lookup for {}", scope.andTemplate(template));
+                return promise;
             }
+            promise = store.open().then(available -> {
+                if (available) {
+                    restore(template, scope);
+                    Metadata restored = failSafeGet(template);
+                    if (allPresent(restored, scope)) {
+                        return Promise.resolve(restored);
+                    }
+                    return read(template, restored, scope);
+                }
+                return read(template, metadata, scope);
+            });
+            track(key, promise);
+            return promise;
+        }
+    }
+
+    private Promise<Metadata> read(AddressTemplate template, Metadata metadata, Scope scope) {
+        List<Operation> operations = rrdOperations(template, metadata, scope);
+        if (operations.isEmpty()) {
+            throw new MetadataException("Unable to create r-r-d operation for " + scope.andTemplate(template));
+        } else if (operations.size() == 1) {
+            Operation operation = operations.get(0);
+            return dispatcher.execute(operation)
+                    .then(modelNode -> new SingleRrdParser(new RrdResult())
+                            .parseAsync(operation.address, modelNode, scope.recursive()))
+                    .then(rrdResult -> Promise.resolve(updateAndGet(template, metadata, rrdResult)));
+        } else {
+            return dispatcher.execute(new Composite(operations))
+                    .then(compositeResult -> new CompositeRrdParser().parseAsync(compositeResult))
+                    .then(rrdResult -> Promise.resolve(updateAndGet(template, metadata, rrdResult)));
         }
     }
 
@@ -187,8 +290,108 @@ public class MetadataRegistry {
         return metadata;
     }
 
+    // ------------------------------------------------------ statistics
+
+    public LruCache.Statistics resourceDescriptionStatistics() {
+        return resourceDescriptions.statistics();
+    }
+
+    public LruCache.Statistics securityContextStatistics() {
+        return securityContexts.statistics();
+    }
+
+    /** @return how many lookups were answered by a wildcard entry (resource descriptions and security contexts) */
+    public long wildcardHits() {
+        return resourceDescriptions.wildcardHits() + securityContexts.wildcardHits();
+    }
+
+    /** @return how often {@link #find(AddressTemplate, Scope)} shared a pending lookup */
+    public int coalescedFinds() {
+        return coalescedFinds;
+    }
+
+    /** @return how often {@link #findAll(MetadataRequest)} shared at least one pending lookup */
+    public int coalescedFindAlls() {
+        return coalescedFindAlls;
+    }
+
     // ------------------------------------------------------ internals
 
+    private String pendingKey(AddressTemplate template, Scope scope) {
+        ResourceAddress rdAddress = template.resolve(statementContext, resolvers.resourceDescriptionResolver());
+        ResourceAddress scAddress = template.resolve(statementContext, resolvers.securityContextResolver());
+        return scope.name() + ":" + rdAddress + "|" + scAddress;
+    }
+
+    /** Registers the promise as pending lookup until it's settled. */
+    private void track(String key, Promise<Metadata> promise) {
+        pending.put(key, promise);
+        promise.then(metadata -> {
+            pending.remove(key);
+            return null;
+        }).catch_(error -> {
+            pending.remove(key);
+            return null;
+        });
+    }
+
+    private void update(RrdResult rrdResult) {
+        resourceDescriptions.putAll(rrdResult.resourceDescriptions);
+        securityContexts.putAll(rrdResult.securityContexts);
+    }
+
+    /**
+     * @param previous the metadata before the r-r-d operations or {@code null} if the r-r-d operations didn't read the
+     *                 security context
+     */
+    private Metadata updateAndGet(AddressTemplate template, Metadata previous, RrdResult rrdResult) {
+        update(rrdResult);
+        Metadata metadata = get(template); // use get now instead of failSafeGet
+        store.put(metadata);
+        if (previous != null && metadata.securityContext != previous.securityContext) {
+            guard(metadata);
+        }
+        return metadata;
+    }
+
+    /** Re-evaluates the guarded elements in the document whose constraints use the template of the metadata. */
+    private void guard(Metadata metadata) {
+        if (metadata.securityContext != null && document.body != null) {
+            ElementGuard.processElements(new AuthorisationDecision(environment, metadata.securityContext),
+                    document.body, singleton(metadata.template));
+        }
+    }
+
+    /**
+     * Copies the stored resource description of the template (if any and if it satisfies the scope) to the in-memory
+     * cache and schedules a revalidation.
+     */
+    private void restore(AddressTemplate template, Scope scope) {
+        ResourceDescription stored = store.get(template);
+        if (stored != null && (stored.recursive || !scope.recursive())) {
+            resourceDescriptions.put(template.resolve(statementContext, resolvers.resourceDescriptionResolver()),
+                    stored);
+            revalidate(template, stored.recursive ? Scope.RECURSIVE : Scope.NORMAL);
+        }
+    }
+
+    /** Reads the resource description of the template in the background and updates the cache and the store. */
+    private void revalidate(AddressTemplate template, Scope scope) {
+        if (!revalidated.containsKey(template)) {
+            revalidated.put(template, true);
+            batcher.execute(new Composite(rrdOperations(template, true, false, scope)))
+                    .then(compositeResult -> new CompositeRrdParser().parseAsync(compositeResult))
+                    .then(rrdResult -> {
+                        updateAndGet(template, null, rrdResult);
+                        return null;
+                    })
+                    .catch_(error -> {
+                        Logger.warn("Unable to revalidate metadata for {}: {}", scope.andTemplate(template), error);
+                        return null;
+                    });
+        }
+    }
+
     private MetadataResult failSafeGet(MetadataRequest request) {
         MetadataResult result = new MetadataResult();
         request.forEach((template, scope) -> result.put(template, failSafeGet(template)));
@@ -224,8 +427,13 @@ public class MetadataRegistry {
     }
 
     private List<Operation> rrdOperations(AddressTemplate template, Metadata metadata, Scope scope) {
+        return rrdOperations(template, metadata.description == null, metadata.securityContext == null, scope);
+    }
+
+    private List<Operation> rrdOperations(AddressTemplate template, boolean description, boolean securityContext,
+            Scope scope) {
         List<Operation.Builder> builders = new ArrayList<>();
-        if (metadata.description == null && metadata.securityContext == null) {
+        if (description && securityContext) {
             ResourceAddress rdAddress = template.resolve(statementContext, resolvers.resourceDescriptionResolver());
             ResourceAddress scAddress = template.resolve(statementContext, resolvers.securityContextResolver());
             if (rdAddress.equals(scAddress)) {
@@ -240,13 +448,13 @@ public class MetadataRegistry {
                         .param(OPERATIONS, true));
             }
 
-        } else if (metadata.description == null) {
+        } else if (description) {
             ResourceAddress address = template.resolve(statementContext,
                     resolvers.resourceDescriptionResolver());
             builders.add(new Operation.Builder(address, READ_RESOURCE_DESCRIPTION_OPERATION)
                     .param(OPERATIONS, true));
 
-        } else if (metadata.securityContext == null) {
+        } else if (securityContext) {
             ResourceAddress address = template.resolve(statementContext, resolvers.securityContextResolver());
             builders.add(new Operation.Builder(address, READ_RESOURCE_DESCRIPTION_OPERATION)
                     .param(ACCESS_CONTROL, TRIM_DESCRIPTIONS)
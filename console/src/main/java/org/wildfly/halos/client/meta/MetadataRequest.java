@@ -43,6 +43,15 @@ public class MetadataRequest {
         return this;
     }
 
+    MetadataRequest add(AddressTemplate template, MetadataRegistry.Scope scope) {
+        request.put(template, scope);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return request.isEmpty();
+    }
+
     public void forEach(BiConsumer<? super AddressTemplate, ? super MetadataRegistry.Scope> action) {
         request.forEach(action);
     }
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.halos.client.meta;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import elemental2.core.ArrayBuffer;
+import elemental2.dom.EventListener;
+import elemental2.promise.Promise;
+import jsinterop.annotations.JsMethod;
+import jsinterop.annotations.JsType;
+import jsinterop.base.Js;
+import org.wildfly.halos.client.config.Environment;
+import org.wildfly.halos.client.dmr.Dispatcher;
+import org.wildfly.halos.client.dmr.ModelNode;
+import org.wildfly.halos.client.dmr.Operation;
+import org.wildfly.halos.client.dmr.ResourceAddress;
+import org.wildfly.halos.client.meta.description.ResourceDescription;
+import org.wildfly.halos.client.util.Logger;
+
+import static jsinterop.annotations.JsPackage.GLOBAL;
+import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
+
+/**
+ * Persistent store for resource descriptions backed by IndexedDB.
+ * <p>
+ * Entries are keyed by the product name and version of the management model and the address template. When the store
+ * is opened, all entries of the current product version are loaded into memory, so that {@link #get(AddressTemplate)}
+ * can answer synchronously. Entries of other product versions are removed. Writes go to memory and IndexedDB.
+ * <p>
+ * Security contexts are not stored: They depend on the user, its roles and the access control configuration, none of
+ * which is part of the key.
+ */
+@Singleton
+public class MetadataStore {
+
+    private static final String DATABASE = "halos-metadata";
+    private static final int DATABASE_VERSION = 2;
+    private static final String OBJECT_STORE = "metadata";
+    private static final String READ_ONLY = "readonly";
+    private static final String READ_WRITE = "readwrite";
+    private static final String KEY_SEPARATOR = "|";
+    private static final String KEY_UPPER_BOUND = "\uffff";
+
+    private final Dispatcher dispatcher;
+    private final boolean enabled;
+    private final Map<String, Entry> entries;
+    private Promise<Boolean> open;
+    private IDBDatabase database;
+    private String prefix;
+
+    @Inject
+    public MetadataStore(Dispatcher dispatcher, Environment environment) {
+        this.dispatcher = dispatcher;
+        this.enabled = environment.persistentMetadata && Js.asPropertyMap(Js.global()).has("indexedDB");
+        this.entries = new HashMap<>();
+    }
+
+    // ------------------------------------------------------ open
+
+    /**
+     * Opens the store and loads the entries of the current product version. The promise resolves with {@code false} if
+     * the store is disabled or cannot be opened. Subsequent calls return the same promise.
+     */
+    Promise<Boolean> open() {
+        if (open == null) {
+            if (enabled) {
+                Operation operation = new Operation.Builder(ResourceAddress.root(), READ_RESOURCE_OPERATION)
+                        .param(ATTRIBUTES_ONLY, true)
+                        .param(INCLUDE_RUNTIME, true)
+                        .build();
+                open = dispatcher.execute(operation)
+                        .then(response -> {
+                            ModelNode result = response.get(RESULT);
+                            prefix = result.get(PRODUCT_NAME).asString() + KEY_SEPARATOR +
+                                    result.get(PRODUCT_VERSION).asString() + KEY_SEPARATOR;
+                            return openDatabase();
+                        })
+                        .then(this::load)
+                        .catch_(error -> {
+                            Logger.warn("Unable to open metadata store: {}", error);
+                            database = null;
+                            return Promise.resolve(false);
+                        });
+            } else {
+                open = Promise.resolve(false);
+            }
+        }
+        return open;
+    }
+
+    private Promise<IDBDatabase> openDatabase() {
+        return new Promise<>((resolve, reject) -> {
+            IDBFactory factory = Js.uncheckedCast(Js.asPropertyMap(Js.global()).get("indexedDB"));
+            IDBRequest request = factory.open(DATABASE, DATABASE_VERSION);
+            // only called when the database is created or DATABASE_VERSION is increased
+            request.addEventListener("upgradeneeded", event -> {
+                IDBDatabase db = Js.uncheckedCast(request.result);
+                if (db.objectStoreNames.contains(OBJECT_STORE)) {
+                    // version 1 stored security contexts as well, drop them all
+                    db.deleteObjectStore(OBJECT_STORE);
+                }
+                db.createObjectStore(OBJECT_STORE);
+            });
+            request.addEventListener("success", event -> {
+                IDBDatabase db = Js.uncheckedCast(request.result);
+                resolve.onInvoke(db);
+            });
+            request.addEventListener("error", event -> reject.onInvoke(request.error));
+        });
+    }
+
+    private Promise<Boolean> load(IDBDatabase db) {
+        return new Promise<>((resolve, reject) -> {
+            IDBRequest request = db.transaction(OBJECT_STORE, READ_ONLY)
+                    .objectStore(OBJECT_STORE)
+                    .getAll(IDBKeyRange.bound(prefix, prefix + KEY_UPPER_BOUND));
+            request.addEventListener("success", event -> {
+                Entry[] loaded = Js.uncheckedCast(request.result);
+                for (Entry entry : loaded) {
+                    entries.put(entry.template, entry);
+                }
+                database = db;
+                Logger.debug("Loaded {} entries from metadata store", entries.size());
+                removeOtherVersions(db);
+                resolve.onInvoke(true);
+            });
+            request.addEventListener("error", event -> reject.onInvoke(request.error));
+        });
+    }
+
+    private void removeOtherVersions(IDBDatabase db) {
+        IDBObjectStore objectStore = db.transaction(OBJECT_STORE, READ_WRITE).objectStore(OBJECT_STORE);
+        IDBRequest before = objectStore.delete(IDBKeyRange.upperBound(prefix, true));
+        IDBRequest after = objectStore.delete(IDBKeyRange.lowerBound(prefix + KEY_UPPER_BOUND, true));
+        EventListener error = event -> Logger.warn("Unable to remove metadata of other versions: {}",
+                before.error != null ? before.error : after.error);
+        before.addEventListener("error", error);
+        after.addEventListener("error", error);
+    }
+
+    // ------------------------------------------------------ get / put
+
+    /** @return the stored resource description for the template or {@code null} if there's no entry for the template */
+    ResourceDescription get(AddressTemplate template) {
+        Entry entry = entries.get(template.toString());
+        if (entry != null) {
+            return new ResourceDescription(ModelNode.fromBinary(entry.description), entry.recursive);
+        }
+        return null;
+    }
+
+    /** Stores the resource description of the metadata if present. */
+    void put(Metadata metadata) {
+        if (database != null && metadata.description != null) {
+            Entry entry = new Entry();
+            entry.template = metadata.template.toString();
+            entry.recursive = metadata.description.recursive;
+            entry.description = metadata.description.toBinary();
+            entries.put(entry.template, entry);
+
+            IDBRequest request = database.transaction(OBJECT_STORE, READ_WRITE)
+                    .objectStore(OBJECT_STORE)
+                    .put(entry, prefix + entry.template);
+            request.addEventListener("error", event -> Logger.warn("Unable to store metadata for {}: {}",
+                    entry.template, request.error));
+        }
+    }
+
+    // ------------------------------------------------------ IndexedDB
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "Object")
+    static class Entry {
+
+        public String template;
+        public boolean recursive;
+        public ArrayBuffer description;
+    }
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "IDBFactory")
+    static class IDBFactory {
+
+        public native IDBRequest open(String name, int version);
+    }
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "IDBRequest")
+    static class IDBRequest {
+
+        public Object result;
+        public Object error;
+
+        public native void addEventListener(String type, EventListener listener);
+    }
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "IDBDatabase")
+    static class IDBDatabase {
+
+        public DOMStringList objectStoreNames;
+
+        public native IDBObjectStore createObjectStore(String name);
+
+        public native void deleteObjectStore(String name);
+
+        public native IDBTransaction transaction(String storeName, String mode);
+    }
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "IDBTransaction")
+    static class IDBTransaction {
+
+        public native IDBObjectStore objectStore(String name);
+    }
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "IDBObjectStore")
+    static class IDBObjectStore {
+
+        public native IDBRequest getAll(Object query);
+
+        public native IDBRequest put(Object value, String key);
+
+        public native IDBRequest delete(Object query);
+    }
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "IDBKeyRange")
+    static class IDBKeyRange {
+
+        @JsMethod
+        public static native Object bound(String lower, String upper);
+
+        @JsMethod
+        public static native Object lowerBound(String lower, boolean open);
+
+        @JsMethod
+        public static native Object upperBound(String upper, boolean open);
+    }
+
+    @JsType(isNative = true, namespace = GLOBAL, name = "DOMStringList")
+    static class DOMStringList {
+
+        public native boolean contains(String string);
+    }
+}
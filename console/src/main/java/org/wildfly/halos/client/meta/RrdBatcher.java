@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.halos.client.meta;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import elemental2.core.JsDate;
+import elemental2.promise.Promise;
+import org.wildfly.halos.client.dmr.Composite;
+import org.wildfly.halos.client.dmr.CompositeResult;
+import org.wildfly.halos.client.dmr.Dispatcher;
+import org.wildfly.halos.client.dmr.Operation;
+
+import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.RECURSIVE_DEPTH;
+
+/**
+ * Splits r-r-d operations into composites and executes them with a limited number of concurrent requests.
+ * <p>
+ * The size of the composites adapts to the observed latency: The batcher keeps a moving average of the time it takes
+ * to read one resource description and sizes the composites so that one composite takes about {@link #TARGET_LATENCY}
+ * milliseconds. Recursive operations are weighted by their depth since their responses are much bigger. Pages which
+ * need many resource descriptions are thus loaded in a few round trips.
+ */
+class RrdBatcher {
+
+    private static final int MIN_BATCH_SIZE = 4;
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final int INITIAL_BATCH_SIZE = 16;
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final double TARGET_LATENCY = 750;
+    private static final double SMOOTHING = 0.3; // weight of the latest measurement
+
+    private final Dispatcher dispatcher;
+    private final Queue<Runnable> queue;
+    private int running;
+    private double latencyPerOperation; // in ms, 0 if there's no measurement yet
+
+    RrdBatcher(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        this.queue = new ArrayDeque<>();
+        this.running = 0;
+        this.latencyPerOperation = 0;
+    }
+
+    /** Splits the operations into composites with a total weight of at most {@link #batchSize()}. */
+    List<Composite> batches(List<Operation> operations) {
+        int capacity = batchSize();
+        List<Composite> composites = new ArrayList<>();
+        List<Operation> batch = new ArrayList<>();
+        int weight = 0;
+        for (Operation operation : operations) {
+            int operationWeight = weight(operation);
+            if (!batch.isEmpty() && weight + operationWeight > capacity) {
+                composites.add(new Composite(batch));
+                batch = new ArrayList<>();
+                weight = 0;
+            }
+            batch.add(operation);
+            weight += operationWeight;
+        }
+        if (!batch.isEmpty()) {
+            composites.add(new Composite(batch));
+        }
+        return composites;
+    }
+
+    /**
+     * Executes the composite as soon as less than {@link #MAX_CONCURRENT_REQUESTS} requests are running and records
+     * its latency.
+     */
+    Promise<CompositeResult> execute(Composite composite) {
+        return new Promise<>((resolve, reject) -> {
+            queue.add(() -> {
+                double start = JsDate.now();
+                dispatcher.execute(composite)
+                        .then(compositeResult -> {
+                            measure(composite, JsDate.now() - start);
+                            finished();
+                            resolve.onInvoke(compositeResult);
+                            return null;
+                        })
+                        .catch_(error -> {
+                            finished();
+                            reject.onInvoke(error);
+                            return null;
+                        });
+            });
+            drain();
+        });
+    }
+
+    int batchSize() {
+        if (latencyPerOperation == 0) {
+            return INITIAL_BATCH_SIZE;
+        }
+        int size = (int) (TARGET_LATENCY / latencyPerOperation);
+        return Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, size));
+    }
+
+    // ------------------------------------------------------ internals
+
+    private void drain() {
+        while (running < MAX_CONCURRENT_REQUESTS && !queue.isEmpty()) {
+            running++;
+            queue.poll().run();
+        }
+    }
+
+    private void finished() {
+        running--;
+        drain();
+    }
+
+    private void measure(Composite composite, double latency) {
+        int weight = 0;
+        for (Operation operation : composite) {
+            weight += weight(operation);
+        }
+        if (weight != 0) {
+            double sample = latency / weight;
+            latencyPerOperation = latencyPerOperation == 0
+                    ? sample
+                    : SMOOTHING * sample + (1 - SMOOTHING) * latencyPerOperation;
+        }
+    }
+
+    private int weight(Operation operation) {
+        return operation.hasDefined(RECURSIVE_DEPTH) ? Math.max(1, operation.get(RECURSIVE_DEPTH).asInt()) : 1;
+    }
+}
@@ -15,46 +15,133 @@
  */
 package org.wildfly.halos.client.meta;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
+import elemental2.core.JsDate;
+import elemental2.promise.Promise;
+import elemental2.promise.Promise.PromiseExecutorCallbackFn.RejectCallbackFn;
+import elemental2.promise.Promise.PromiseExecutorCallbackFn.ResolveCallbackFn;
 import org.wildfly.halos.client.dmr.ModelNode;
+import org.wildfly.halos.client.dmr.ModelNodeInterner;
 import org.wildfly.halos.client.dmr.ModelType;
 import org.wildfly.halos.client.dmr.Property;
 import org.wildfly.halos.client.dmr.ResourceAddress;
 import org.wildfly.halos.client.meta.description.ResourceDescription;
 import org.wildfly.halos.client.meta.security.SecurityContext;
+import org.wildfly.halos.client.util.Logger;
 
+import static elemental2.dom.DomGlobal.setTimeout;
 import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
 
 /**
  * This class does the bulk of work when it comes to parse the {@code read-resource-description} response and collect
  * the results.
+ * <p>
+ * Resources are parsed one at a time from a work queue. {@link #parseAsync()} processes the queue in short time
+ * slices and yields to the browser in between, so that parsing large recursive results doesn't block the UI.
+ * <p>
+ * Wildcard and recursive results contain many identical attribute and operation descriptions. These are hash-consed
+ * using a {@link ModelNodeInterner}, so that equal descriptions are stored only once and shared between all
+ * resource descriptions of this parser. Security contexts compile their payload into bitsets and don't need this.
  */
 class SingleRrdParser {
 
+    /** Maximum time in ms to parse before yielding to the browser */
+    private static final double TIME_SLICE = 10;
+
     private final RrdResult rrdResult;
+    private final Deque<Task> tasks;
+    private final ModelNodeInterner interner;
 
     SingleRrdParser(RrdResult rrdResult) {
         this.rrdResult = rrdResult;
+        this.tasks = new ArrayDeque<>();
+        this.interner = new ModelNodeInterner();
     }
 
     RrdResult parse(ResourceAddress address, ModelNode modelNode, boolean recursive) {
+        enqueue(address, modelNode, recursive);
+        return parse();
+    }
+
+    Promise<RrdResult> parseAsync(ResourceAddress address, ModelNode modelNode, boolean recursive) {
+        enqueue(address, modelNode, recursive);
+        return parseAsync();
+    }
+
+    /** Adds the r-r-d result to the work queue w/o parsing it. */
+    void enqueue(ResourceAddress address, ModelNode modelNode, boolean recursive) {
         if (modelNode.getType() == ModelType.LIST) {
             for (ModelNode nestedNode : modelNode.asList()) {
                 ResourceAddress nestedAddress = new ResourceAddress(nestedNode.get(ADDRESS));
                 ModelNode nestedResult = nestedNode.get(RESULT);
-                parseSingle(nestedAddress, nestedResult, recursive);
+                tasks.addLast(new Task(nestedAddress, nestedResult, recursive));
             }
         } else {
-            parseSingle(address, modelNode, recursive);
+            tasks.addLast(new Task(address, modelNode, recursive));
+        }
+    }
+
+    /** Parses all queued r-r-d results at once. */
+    RrdResult parse() {
+        while (!tasks.isEmpty()) {
+            Task task = tasks.pollFirst();
+            parseSingle(task.address, task.modelNode, task.recursive);
         }
+        logSharing();
         return rrdResult;
     }
 
+    /** Parses all queued r-r-d results in time slices. */
+    Promise<RrdResult> parseAsync() {
+        return new Promise<>((resolve, reject) -> slice(resolve, reject));
+    }
+
+    private void slice(ResolveCallbackFn<RrdResult> resolve, RejectCallbackFn reject) {
+        double start = JsDate.now();
+        try {
+            while (!tasks.isEmpty()) {
+                Task task = tasks.pollFirst();
+                parseSingle(task.address, task.modelNode, task.recursive);
+                if (!tasks.isEmpty() && JsDate.now() - start > TIME_SLICE) {
+                    setTimeout(ignore -> slice(resolve, reject), 0);
+                    return;
+                }
+            }
+            logSharing();
+            resolve.onInvoke(rrdResult);
+        } catch (RuntimeException e) {
+            reject.onInvoke(e);
+        }
+    }
+
     private void parseSingle(ResourceAddress address, ModelNode modelNode, boolean recursive) {
+        // to reduce the payload we only use the flat model node w/o children
+        ModelNode childrenNode = modelNode.hasDefined(CHILDREN) ? modelNode.remove(CHILDREN) : new ModelNode();
+        if (childrenNode.isDefined()) {
+            List<Property> children = childrenNode.asPropertyList();
+            for (Property child : children) {
+                String addressKey = child.getName();
+                if (child.getValue().hasDefined(MODEL_DESCRIPTION)) {
+                    List<Property> modelDescriptions = child.getValue().get(MODEL_DESCRIPTION).asPropertyList();
+                    for (Property modelDescription : modelDescriptions) {
+                        String addressValue = modelDescription.getName();
+                        ModelNode childNode = modelDescription.getValue();
+                        ResourceAddress childAddress = address.add(addressKey, addressValue);
+                        // only the top-level result gets the recursive flag
+                        tasks.addLast(new Task(childAddress, childNode, false));
+                    }
+                }
+            }
+        }
+
         // resource description
         if (!rrdResult.containsResourceDescription(address) && modelNode.hasDefined(DESCRIPTION)) {
             ResourceDescription resourceDescription = new ResourceDescription(modelNode, recursive);
+            interner.internChildren(resourceDescription, ATTRIBUTES);
+            interner.internChildren(resourceDescription, OPERATIONS);
             rrdResult.addResourceDescription(resourceDescriptionAddress(address), resourceDescription);
         }
 
@@ -62,8 +149,7 @@ class SingleRrdParser {
         ModelNode accessControl = modelNode.get(ACCESS_CONTROL);
         if (accessControl.isDefined()) {
             if (!rrdResult.containsSecurityContext(address) && accessControl.hasDefined(DEFAULT)) {
-                SecurityContext securityContext = new SecurityContext(accessControl.get(DEFAULT), recursive);
-                rrdResult.addSecurityContext(address, securityContext);
+                rrdResult.addSecurityContext(address, new SecurityContext(accessControl.get(DEFAULT), recursive));
             }
 
             // exceptions
@@ -79,29 +165,28 @@ class SingleRrdParser {
                 }
             }
         }
+    }
 
-        // to reduce the payload we only use the flat model node w/o children
-        ModelNode childrenNode = modelNode.hasDefined(CHILDREN) ? modelNode.remove(CHILDREN) : new ModelNode();
-        if (childrenNode.isDefined()) {
-            List<Property> children = childrenNode.asPropertyList();
-            for (Property child : children) {
-                String addressKey = child.getName();
-                if (child.getValue().hasDefined(MODEL_DESCRIPTION)) {
-                    List<Property> modelDescriptions = child.getValue().get(MODEL_DESCRIPTION).asPropertyList();
-                    for (Property modelDescription : modelDescriptions) {
-                        String addressValue = modelDescription.getName();
-                        ModelNode childNode = modelDescription.getValue();
-                        ResourceAddress childAddress = new ResourceAddress(address).add(addressKey, addressValue);
-                        // only the top-level result gets the recursive flag
-                        parseSingle(childAddress, childNode, false);
-                    }
-                }
-            }
-        }
+    private void logSharing() {
+        Logger.debug("Shared {} of {} attribute and operation descriptions", interner.hits(),
+                interner.hits() + interner.misses());
     }
 
     private ResourceAddress resourceDescriptionAddress(ResourceAddress address) {
         // TODO adjust resource address for resource descriptions
         return address;
     }
+
+    private static class Task {
+
+        final ResourceAddress address;
+        final ModelNode modelNode;
+        final boolean recursive;
+
+        Task(ResourceAddress address, ModelNode modelNode, boolean recursive) {
+            this.address = address;
+            this.modelNode = modelNode;
+            this.recursive = recursive;
+        }
+    }
 }
@@ -43,6 +43,11 @@ public interface StatementContext {
         public void assign(String placeholder, String value) {
             // noop
         }
+
+        @Override
+        public int version(String placeholder) {
+            return 0;
+        }
     };
 
     AddressTemplate.Segment resolve(AddressTemplate.Segment segment);
@@ -54,4 +59,10 @@ public interface StatementContext {
     String value(Placeholder placeHolder);
 
     void assign(String placeholder, String value);
+
+    /**
+     * Returns a counter which changes whenever the definition or the value of the placeholder changes. Used by
+     * {@link AddressTemplate} to decide whether a cached resolution is still valid.
+     */
+    int version(String placeholder);
 }
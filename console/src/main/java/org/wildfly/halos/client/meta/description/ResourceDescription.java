@@ -15,7 +15,10 @@
  */
 package org.wildfly.halos.client.meta.description;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.wildfly.halos.client.dmr.ModelNode;
 import org.wildfly.halos.client.dmr.ModelNodeHelper;
@@ -23,10 +26,17 @@ import org.wildfly.halos.client.dmr.ModelType;
 import org.wildfly.halos.client.dmr.Property;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
 import static java.util.stream.Collectors.toList;
 import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
 
-/** Contains the resource and attribute descriptions from the read-resource-description operation. */
+/**
+ * Contains the resource and attribute descriptions from the read-resource-description operation.
+ * <p>
+ * Attribute and operation lookups use indexes which are built on first access and cached: attributes by name, by
+ * group and the required attributes per path, and operations by name. The indexes assume that the description is not
+ * modified after the first lookup. The returned lists are unmodifiable.
+ */
 /* TODO Refactor methods which use the 'path' parameter (too error prone). Instead, use a fluent API:
  *
  * ResourceDescription description = ...;
@@ -44,9 +54,13 @@ import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
 public class ResourceDescription extends ModelNode {
 
     public final boolean recursive;
+    private final Map<String, AttributeIndex> attributeIndexes;
+    private Map<String, Property> operationIndex;
+    private List<Property> operations;
 
     public ResourceDescription(ModelNode payload, boolean recursive) {
         this.recursive = recursive;
+        this.attributeIndexes = new HashMap<>();
         set(payload);
     }
 
@@ -56,60 +70,29 @@ public class ResourceDescription extends ModelNode {
     }
 
     public List<Property> getAttributes(String path) {
-        ModelNode attributes = ModelNodeHelper.failSafeGet(this, path);
-        if (attributes.isDefined()) {
-            return attributes.asPropertyList();
-        }
-        return emptyList();
+        return attributeIndex(path).attributes;
     }
 
     public List<Property> getAttributes(String path, String group) {
-        List<Property> attributes = getAttributes(path);
-        return attributes.stream()
-                .filter(property -> {
-                    ModelNode attributeDescription = property.getValue();
-                    return attributeDescription.hasDefined(ATTRIBUTE_GROUP) &&
-                            group.equals(attributeDescription.get(ATTRIBUTE_GROUP).asString());
-                })
-                .collect(toList());
+        List<Property> attributes = attributeIndex(path).byGroup.get(group);
+        return attributes != null ? attributes : emptyList();
     }
 
     public List<Property> getRequiredAttributes(String path) {
-        return getAttributes(path).stream()
-                .filter(property -> {
-                    ModelNode attributeDescription = property.getValue();
-                    if (attributeDescription.hasDefined(REQUIRED)) {
-                        return attributeDescription.get(REQUIRED).asBoolean();
-                    } else if (attributeDescription.hasDefined(NILLABLE)) {
-                        return !attributeDescription.get(NILLABLE).asBoolean();
-                    }
-                    return false;
-                })
-                .collect(toList());
+        return attributeIndex(path).required;
     }
 
     public List<Property> getOperations() {
-        return hasDefined(OPERATIONS) ? get(OPERATIONS).asPropertyList() : emptyList();
+        operationIndex();
+        return operations;
     }
 
     public Property findOperation(String name) {
-        if (hasDefined(OPERATIONS)) {
-            for (Property property : get(OPERATIONS).asPropertyList()) {
-                if (name.equals(property.getName())) {
-                    return property;
-                }
-            }
-        }
-        return null;
+        return operationIndex().get(name);
     }
 
     public Property findAttribute(String path, String name) {
-        for (Property property : getAttributes(path)) {
-            if (name.equals(property.getName())) {
-                return property;
-            }
-        }
-        return null;
+        return attributeIndex(path).byName.get(name);
     }
 
     /**
@@ -141,18 +124,8 @@ public class ResourceDescription extends ModelNode {
      * no attribute {@code name}
      */
     public List<String> findRequires(String path, String name) {
-        return getAttributes(path).stream()
-                .filter(attribute -> {
-                    if (attribute.getValue().hasDefined(REQUIRES)) {
-                        List<String> requires = attribute.getValue().get(REQUIRES).asList().stream()
-                                .map(ModelNode::asString)
-                                .collect(toList());
-                        return requires.contains(name);
-                    }
-                    return false;
-                })
-                .map(Property::getName)
-                .collect(toList());
+        List<String> requires = attributeIndex(path).requiredBy().get(name);
+        return requires != null ? unmodifiableList(requires) : emptyList();
     }
 
     public boolean isDefaultValue(String path, String name, Object value) {
@@ -183,4 +156,85 @@ public class ResourceDescription extends ModelNode {
         }
         return false;
     }
+
+    // ------------------------------------------------------ indexes
+
+    private AttributeIndex attributeIndex(String path) {
+        AttributeIndex index = attributeIndexes.get(path);
+        if (index == null) {
+            ModelNode attributes = ModelNodeHelper.failSafeGet(this, path);
+            index = new AttributeIndex(attributes.isDefined() ? attributes.asPropertyList() : emptyList());
+            attributeIndexes.put(path, index);
+        }
+        return index;
+    }
+
+    private Map<String, Property> operationIndex() {
+        if (operationIndex == null) {
+            List<Property> properties = hasDefined(OPERATIONS) ? get(OPERATIONS).asPropertyList() : emptyList();
+            operationIndex = new HashMap<>();
+            for (Property property : properties) {
+                operationIndex.putIfAbsent(property.getName(), property);
+            }
+            operations = unmodifiableList(properties);
+        }
+        return operationIndex;
+    }
+
+    private static class AttributeIndex {
+
+        final List<Property> attributes;
+        final Map<String, Property> byName;
+        final Map<String, List<Property>> byGroup;
+        final List<Property> required;
+        private Map<String, List<String>> requiredBy;
+
+        AttributeIndex(List<Property> properties) {
+            this.attributes = unmodifiableList(properties);
+            this.byName = new HashMap<>();
+            this.byGroup = new HashMap<>();
+            List<Property> required = new ArrayList<>();
+            for (Property property : properties) {
+                ModelNode attributeDescription = property.getValue();
+                byName.putIfAbsent(property.getName(), property);
+                if (attributeDescription.hasDefined(ATTRIBUTE_GROUP)) {
+                    byGroup.computeIfAbsent(attributeDescription.get(ATTRIBUTE_GROUP).asString(),
+                            group -> new ArrayList<>()).add(property);
+                }
+                if (isRequired(attributeDescription)) {
+                    required.add(property);
+                }
+            }
+            byGroup.replaceAll((group, list) -> unmodifiableList(list));
+            this.required = unmodifiableList(required);
+        }
+
+        /** Maps an attribute to the names of the attributes which require it. Built on first use. */
+        Map<String, List<String>> requiredBy() {
+            if (requiredBy == null) {
+                requiredBy = new HashMap<>();
+                for (Property attribute : attributes) {
+                    if (attribute.getValue().hasDefined(REQUIRES)) {
+                        for (ModelNode requires : attribute.getValue().get(REQUIRES).asList()) {
+                            List<String> names = requiredBy.computeIfAbsent(requires.asString(),
+                                    name -> new ArrayList<>());
+                            if (!names.contains(attribute.getName())) {
+                                names.add(attribute.getName());
+                            }
+                        }
+                    }
+                }
+            }
+            return requiredBy;
+        }
+
+        private static boolean isRequired(ModelNode attributeDescription) {
+            if (attributeDescription.hasDefined(REQUIRED)) {
+                return attributeDescription.get(REQUIRED).asBoolean();
+            } else if (attributeDescription.hasDefined(NILLABLE)) {
+                return !attributeDescription.get(NILLABLE).asBoolean();
+            }
+            return false;
+        }
+    }
 }
@@ -15,7 +15,8 @@
  */
 package org.wildfly.halos.client.meta.security;
 
-import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.wildfly.halos.client.config.AccessControlProvider;
 import org.wildfly.halos.client.config.Environment;
@@ -40,15 +41,22 @@ import static org.wildfly.halos.client.meta.security.Constraints.Operator.AND;
  * <p>
  * If WildFly uses {@link org.wildfly.halos.client.config.AccessControlProvider#SIMPLE}, {@code isAllowed()} will <strong>always</strong>
  * return {@code true}.
+ * <p>
+ * The decisions are memoized per constraint, so reuse one instance for all elements guarded by the same security
+ * context. Security contexts are immutable: If the security context is read again, create a new instance. The memo is
+ * dropped if the access control provider changes, or on demand using {@link #reset()}.
  */
 public class AuthorisationDecision {
 
     private final Environment environment;
     private final SecurityContext securityContext;
+    private final Map<Constraint, Boolean> decisions;
+    private AccessControlProvider decidedFor;
 
     public AuthorisationDecision(Environment environment, SecurityContext securityContext) {
         this.environment = environment;
         this.securityContext = securityContext;
+        this.decisions = new HashMap<>();
     }
 
     public boolean isAllowed(Constraints constraints) {
@@ -56,26 +64,38 @@ public class AuthorisationDecision {
             return true;
         }
 
-        int size = constraints.size();
-        if (size == 1) {
-            return isAllowed(constraints.iterator().next());
-        } else {
-            int index = 0;
-            BitSet bits = new BitSet(size);
-            for (Constraint constraint : constraints) {
-                bits.set(index, isAllowed(constraint));
-                index++;
+        // short-circuit: AND stops at the first denied, OR at the first allowed constraint
+        boolean and = constraints.operator == AND;
+        for (Constraint constraint : constraints) {
+            if (isAllowed(constraint) != and) {
+                return !and;
             }
-            int cardinality = bits.cardinality();
-            return constraints.operator == AND ? cardinality == size : cardinality > 0;
         }
+        return and;
     }
 
     public boolean isAllowed(Constraint constraint) {
         if (environment.accessControlProvider == AccessControlProvider.SIMPLE) {
             return true;
         }
+        if (decidedFor != environment.accessControlProvider) {
+            decisions.clear();
+            decidedFor = environment.accessControlProvider;
+        }
+        Boolean allowed = decisions.get(constraint);
+        if (allowed == null) {
+            allowed = decide(constraint);
+            decisions.put(constraint, allowed);
+        }
+        return allowed;
+    }
+
+    /** Forgets all memoized decisions. */
+    public void reset() {
+        decisions.clear();
+    }
 
+    private boolean decide(Constraint constraint) {
         boolean allowed = false;
         if (constraint.target == Target.OPERATION) {
             switch (constraint.permission) {
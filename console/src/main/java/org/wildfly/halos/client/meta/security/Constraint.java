@@ -52,12 +52,19 @@ public class Constraint {
     public final Target target;
     public final String name;
     public final Permission permission;
+    private final int hash;
 
     private Constraint(AddressTemplate template, String name, Target target, Permission permission) {
         this.template = template;
         this.target = target;
         this.name = name;
         this.permission = permission;
+
+        int result = template.hashCode();
+        result = 31 * result + target.hashCode();
+        result = 31 * result + name.hashCode();
+        result = 31 * result + permission.hashCode();
+        this.hash = result; // constraints are used as keys by AuthorisationDecision
     }
 
     @Override
@@ -84,11 +91,7 @@ public class Constraint {
 
     @Override
     public int hashCode() {
-        int result = template.hashCode();
-        result = 31 * result + target.hashCode();
-        result = 31 * result + name.hashCode();
-        result = 31 * result + permission.hashCode();
-        return result;
+        return hash;
     }
 
     @Override
@@ -15,11 +15,16 @@
  */
 package org.wildfly.halos.client.meta.security;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
+import org.wildfly.halos.client.meta.AddressTemplate;
+
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableSet;
 import static java.util.stream.Collectors.joining;
@@ -28,6 +33,15 @@ import static org.wildfly.halos.client.util.Strings.emptyToNull;
 /** A set of {@linkplain Constraint constraints} with an operator. */
 public class Constraints implements Iterable<Constraint> {
 
+    private static final int PARSE_CACHE_SIZE = 256;
+    private static final Map<String, Constraints> PARSE_CACHE = new LinkedHashMap<String, Constraints>(64, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Constraints> eldest) {
+            return size() > PARSE_CACHE_SIZE;
+        }
+    };
+
     public enum Operator {
         AND("&"), OR("|");
 
@@ -92,38 +106,52 @@ public class Constraints implements Iterable<Constraint> {
 
     // ------------------------------------------------------ parse
 
+    /**
+     * Parses the {@code data-constraint} format. Parsed constraints are cached by their input, since the same
+     * constraints are usually used by many elements.
+     */
     public static Constraints parse(String input) {
         if (emptyToNull(input) != null) {
-            Operator operator;
-            if (input.contains(Operator.AND.operator)) {
-                operator = Operator.AND;
-            } else if (input.contains(Operator.OR.operator)) {
-                operator = Operator.OR;
-            } else {
-                operator = Operator.AND;
-            }
-            String[] values = input.split(operator.operator);
-            LinkedHashSet<Constraint> constraints = new LinkedHashSet<>();
-            for (String value : values) {
-                try {
-                    constraints.add(Constraint.parse(value));
-                } catch (IllegalArgumentException ignored) {
-                }
+            Constraints constraints = PARSE_CACHE.get(input);
+            if (constraints == null) {
+                constraints = parseInternal(input);
+                PARSE_CACHE.put(input, constraints);
             }
-            return new Constraints(constraints, operator);
-
+            return constraints;
         } else {
             return empty();
         }
     }
 
+    private static Constraints parseInternal(String input) {
+        Operator operator;
+        if (input.contains(Operator.AND.operator)) {
+            operator = Operator.AND;
+        } else if (input.contains(Operator.OR.operator)) {
+            operator = Operator.OR;
+        } else {
+            operator = Operator.AND;
+        }
+        // '|' is a regex meta character
+        String[] values = input.split("\\" + operator.operator);
+        LinkedHashSet<Constraint> constraints = new LinkedHashSet<>();
+        for (String value : values) {
+            try {
+                constraints.add(Constraint.parse(value));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return new Constraints(constraints, operator);
+    }
+
     // ------------------------------------------------------ instance
 
-    private final LinkedHashSet<Constraint> constraints;
+    private final Set<Constraint> constraints;
     public final Operator operator;
 
     private Constraints(LinkedHashSet<Constraint> constraints, Operator operator) {
-        this.constraints = constraints;
+        // parsed instances are cached and shared, so they must not change
+        this.constraints = unmodifiableSet(constraints);
         this.operator = operator;
     }
 
@@ -160,7 +188,17 @@ public class Constraints implements Iterable<Constraint> {
         return constraints.contains(o);
     }
 
+    /** @return whether one of the constraints uses one of the specified templates */
+    public boolean references(Collection<AddressTemplate> templates) {
+        for (Constraint constraint : constraints) {
+            if (templates.contains(constraint.template)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Set<Constraint> constraints() {
-        return unmodifiableSet(constraints);
+        return constraints;
     }
 }
@@ -15,12 +15,18 @@
  */
 package org.wildfly.halos.client.meta.security;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+import elemental2.dom.DomGlobal;
 import elemental2.dom.HTMLElement;
 import org.jboss.elemento.By;
 import org.jboss.elemento.Elements;
+import org.wildfly.halos.client.meta.AddressTemplate;
 import org.wildfly.halos.client.resources.CSS;
 import org.wildfly.halos.client.resources.UIConstants;
 
@@ -32,14 +38,25 @@ import static org.patternfly.resources.CSS.util;
 /**
  * Helper class to process elements with constraints in their {@code data-constraint} attributes. Toggles the element's
  * visibility depending on the {@link AuthorisationDecision} result.
+ * <p>
+ * The {@code processElements()} methods make their decisions right away, but collect the class changes and write them
+ * in one animation frame. Only elements whose state actually changes are touched. {@link #toggle(HTMLElement,
+ * boolean)} changes the element synchronously. Pending changes of elements which have been removed from the document
+ * are dropped.
  */
 public class ElementGuard {
 
+    // pending class changes: element -> hidden
+    private static final Map<HTMLElement, Boolean> pending = new LinkedHashMap<>();
+    private static boolean flushScheduled = false;
+
     /**
-     * Adds the {@link CSS#rbacHidden} CSS class if {@code condition == true}, removes it otherwise.
+     * Adds the {@link CSS#rbacHidden} CSS class if {@code condition == true}, removes it otherwise. The change is
+     * applied immediately and replaces a pending change of the element.
      */
     public static void toggle(HTMLElement element, boolean condition) {
         if (new Visible().test(element)) {
+            pending.remove(element);
             Elements.toggle(element, CSS.rbacHidden, condition);
         }
     }
@@ -52,12 +69,75 @@ public class ElementGuard {
         processElements(authorisationDecision, findAll(element, By.data(UIConstants.CONSTRAINT)));
     }
 
+    /**
+     * Re-evaluates only the elements below {@code element} whose constraints use one of the specified templates. Use
+     * this method if the security contexts of some templates have changed.
+     */
+    public static void processElements(AuthorisationDecision authorisationDecision, HTMLElement element,
+            Collection<AddressTemplate> changed) {
+        if (!changed.isEmpty()) {
+            prune();
+            stream(findAll(element, By.data(UIConstants.CONSTRAINT)).spliterator(), false)
+                    .filter(e -> constraints(e).references(changed))
+                    .filter(new Visible())
+                    .forEach(new Toggle(authorisationDecision));
+        }
+    }
+
     private static void processElements(AuthorisationDecision authorisationDecision, Iterable<HTMLElement> elements) {
+        prune();
         stream(elements.spliterator(), false)
                 .filter(new Visible()) // prevent that hidden elements become visible by Toggle()
                 .forEach(new Toggle(authorisationDecision));
     }
 
+    private static Constraints constraints(HTMLElement element) {
+        Object data = element.dataset.get(UIConstants.CONSTRAINT);
+        return data != null ? Constraints.parse(String.valueOf(data)) : Constraints.empty();
+    }
+
+    // ------------------------------------------------------ batched DOM updates
+
+    /** @return whether the element is hidden or will be hidden once the pending changes are written */
+    private static boolean isHidden(HTMLElement element) {
+        Boolean hidden = pending.get(element);
+        return hidden != null ? hidden : element.classList.contains(CSS.rbacHidden);
+    }
+
+    private static void schedule(HTMLElement element, boolean hidden) {
+        pending.put(element, hidden); // later updates of the same element win
+        if (!flushScheduled) {
+            flushScheduled = true;
+            DomGlobal.requestAnimationFrame(timestamp -> flush());
+        }
+    }
+
+    private static void flush() {
+        pending.forEach((element, hidden) -> {
+            if (attached(element)) {
+                Elements.toggle(element, CSS.rbacHidden, hidden);
+            }
+        });
+        pending.clear();
+        flushScheduled = false;
+    }
+
+    /**
+     * Drops the pending changes of elements which have been removed from the document. Animation frames are not
+     * delivered to hidden tabs, so pending changes can pile up between two flushes.
+     */
+    private static void prune() {
+        for (Iterator<HTMLElement> iterator = pending.keySet().iterator(); iterator.hasNext(); ) {
+            if (!attached(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean attached(HTMLElement element) {
+        return document.documentElement.contains(element);
+    }
+
     private ElementGuard() {
     }
 
@@ -77,7 +157,10 @@ public class ElementGuard {
     }
 
 
-    /** Toggle the CSS class {@link CSS#rbacHidden} based on the element's constraints. */
+    /**
+     * Toggle the CSS class {@link CSS#rbacHidden} based on the element's constraints. The constraints are parsed once
+     * per distinct {@code data-constraint} value and the class change is written in the next animation frame.
+     */
     public static class Toggle implements Consumer<HTMLElement> {
 
         private final AuthorisationDecision authorisationDecision;
@@ -88,10 +171,12 @@ public class ElementGuard {
 
         @Override
         public void accept(HTMLElement element) {
-            String data = String.valueOf(element.dataset.get(UIConstants.CONSTRAINT));
+            Object data = element.dataset.get(UIConstants.CONSTRAINT);
             if (data != null) {
-                Constraints constraints = Constraints.parse(data);
-                Elements.toggle(element, CSS.rbacHidden, !authorisationDecision.isAllowed(constraints));
+                boolean hidden = !authorisationDecision.isAllowed(Constraints.parse(String.valueOf(data)));
+                if (hidden != isHidden(element)) {
+                    schedule(element, hidden);
+                }
             }
         }
     }
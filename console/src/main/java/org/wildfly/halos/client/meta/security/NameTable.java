@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.halos.client.meta.security;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable table of attribute or operation names which maps each name to a dense index. Security contexts use
+ * the index to look up their permissions in bitsets.
+ * <p>
+ * Tables are interned: Security contexts of resources of the same type have the same attribute and operation names
+ * and share one table. The intern pool keeps the least recently used tables only. Security contexts of the same type
+ * are usually created one after another, so the last interned table is compared first, which saves hashing the
+ * names.
+ */
+final class NameTable {
+
+    static final NameTable EMPTY = new NameTable(new String[0]);
+    private static final int TABLES_SIZE = 256;
+    private static final Map<List<String>, NameTable> TABLES = new LinkedHashMap<List<String>, NameTable>(64, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, NameTable> eldest) {
+            return size() > TABLES_SIZE;
+        }
+    };
+    private static NameTable last = EMPTY;
+
+    static NameTable intern(String[] names) {
+        if (names.length == 0) {
+            return EMPTY;
+        }
+        if (Arrays.equals(last.names, names)) {
+            return last;
+        }
+        List<String> key = Arrays.asList(names);
+        NameTable table = TABLES.get(key);
+        if (table == null) {
+            table = new NameTable(names);
+            TABLES.put(key, table);
+        }
+        last = table;
+        return table;
+    }
+
+    private final String[] names;
+    private final Map<String, Integer> indexes;
+
+    private NameTable(String[] names) {
+        this.names = names;
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            indexes.put(names[i], i);
+        }
+    }
+
+    /** @return the index of the name or -1 if the name is not in this table */
+    int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index != null ? index : -1;
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    int size() {
+        return names.length;
+    }
+}
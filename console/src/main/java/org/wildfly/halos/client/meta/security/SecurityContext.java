@@ -15,12 +15,25 @@
  */
 package org.wildfly.halos.client.meta.security;
 
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import elemental2.core.ArrayBuffer;
 import org.wildfly.halos.client.dmr.ModelNode;
+import org.wildfly.halos.client.dmr.Property;
 
 import static org.wildfly.halos.client.dmr.ModelDescriptionConstants.*;
 
-/** Represents the RBAC related payload from the read-resource-description operation. */
-public class SecurityContext extends ModelNode {
+/**
+ * Represents the RBAC related payload from the read-resource-description operation.
+ * <p>
+ * The payload is compiled into a compact structure when the security context is created: The attribute and operation
+ * names are stored in {@linkplain NameTable interned name tables} and the permissions in bitsets indexed by the
+ * position in the tables. All checks are O(1) and the payload itself is not kept. Use {@link #toModelNode()} to get
+ * the payload back.
+ */
+public class SecurityContext {
 
     /** A security context with hardcoded permissions to read resources, write and execute operations are not allowed. */
     public static final SecurityContext READ_ONLY = new SecurityContext(new ModelNode(), false) {
@@ -79,20 +92,58 @@ public class SecurityContext extends ModelNode {
     };
 
     public final boolean recursive;
+    private final boolean readable;
+    private final boolean writable;
+    private final NameTable attributes;
+    private final NameTable operations;
+    private final BitSet readableAttributes;
+    private final BitSet writableAttributes;
+    private final BitSet executableOperations;
 
     public SecurityContext(ModelNode payload, boolean recursive) {
         this.recursive = recursive;
-        set(payload);
+        this.readable = payload.hasDefined(READ) && payload.get(READ).asBoolean();
+        this.writable = payload.hasDefined(WRITE) && payload.get(WRITE).asBoolean();
+
+        List<Property> attributeList = payload.hasDefined(ATTRIBUTES)
+                ? payload.get(ATTRIBUTES).asPropertyList()
+                : Collections.<Property>emptyList();
+        this.attributes = NameTable.intern(names(attributeList));
+        this.readableAttributes = new BitSet(attributeList.size());
+        this.writableAttributes = new BitSet(attributeList.size());
+        for (int i = 0; i < attributeList.size(); i++) {
+            ModelNode attribute = attributeList.get(i).getValue();
+            readableAttributes.set(i, attribute.hasDefined(READ) && attribute.get(READ).asBoolean());
+            writableAttributes.set(i, attribute.hasDefined(WRITE) && attribute.get(WRITE).asBoolean());
+        }
+
+        List<Property> operationList = payload.hasDefined(OPERATIONS)
+                ? payload.get(OPERATIONS).asPropertyList()
+                : Collections.<Property>emptyList();
+        this.operations = NameTable.intern(names(operationList));
+        this.executableOperations = new BitSet(operationList.size());
+        for (int i = 0; i < operationList.size(); i++) {
+            ModelNode operation = operationList.get(i).getValue();
+            executableOperations.set(i, operation.hasDefined(EXECUTE) && operation.get(EXECUTE).asBoolean());
+        }
+    }
+
+    private static String[] names(List<Property> properties) {
+        String[] names = new String[properties.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = properties.get(i).getName();
+        }
+        return names;
     }
 
     /** @return whether the security context is readable */
     public boolean isReadable() {
-        return get(READ).asBoolean();
+        return readable;
     }
 
     /** @return whether the security context is writable */
     public boolean isWritable() {
-        return get(WRITE).asBoolean();
+        return writable;
     }
 
     /**
@@ -100,9 +151,8 @@ public class SecurityContext extends ModelNode {
      * @return whether the attribute is readable
      */
     public boolean isReadable(String attribute) {
-        return hasDefined(ATTRIBUTES) &&
-                get(ATTRIBUTES).hasDefined(attribute) &&
-                get(ATTRIBUTES).get(attribute).get(READ).asBoolean();
+        int index = attributes.indexOf(attribute);
+        return index != -1 && readableAttributes.get(index);
     }
 
     /**
@@ -110,9 +160,8 @@ public class SecurityContext extends ModelNode {
      * @return whether the attribute is writable
      */
     public boolean isWritable(String attribute) {
-        return hasDefined(ATTRIBUTES) &&
-                get(ATTRIBUTES).hasDefined(attribute) &&
-                get(ATTRIBUTES).get(attribute).get(WRITE).asBoolean();
+        int index = attributes.indexOf(attribute);
+        return index != -1 && writableAttributes.get(index);
     }
 
     /**
@@ -120,8 +169,41 @@ public class SecurityContext extends ModelNode {
      * @return whether the operation is executable
      */
     public boolean isExecutable(String operation) {
-        return hasDefined(OPERATIONS) &&
-                get(OPERATIONS).hasDefined(operation) &&
-                get(OPERATIONS).get(operation).get(EXECUTE).asBoolean();
+        int index = operations.indexOf(operation);
+        return index != -1 && executableOperations.get(index);
+    }
+
+    // ------------------------------------------------------ model node
+
+    /** @return the security context in the format of the read-resource-description operation */
+    public ModelNode toModelNode() {
+        ModelNode modelNode = new ModelNode();
+        modelNode.get(READ).set(readable);
+        modelNode.get(WRITE).set(writable);
+        if (attributes.size() != 0) {
+            ModelNode attributesNode = modelNode.get(ATTRIBUTES);
+            for (int i = 0; i < attributes.size(); i++) {
+                ModelNode attribute = attributesNode.get(attributes.name(i));
+                attribute.get(READ).set(readableAttributes.get(i));
+                attribute.get(WRITE).set(writableAttributes.get(i));
+            }
+        }
+        if (operations.size() != 0) {
+            ModelNode operationsNode = modelNode.get(OPERATIONS);
+            for (int i = 0; i < operations.size(); i++) {
+                operationsNode.get(operations.name(i)).get(EXECUTE).set(executableOperations.get(i));
+            }
+        }
+        return modelNode;
+    }
+
+    /** @return the binary form of {@link #toModelNode()} */
+    public ArrayBuffer toBinary() {
+        return toModelNode().toBinary();
+    }
+
+    @Override
+    public String toString() {
+        return toModelNode().toString();
     }
 }
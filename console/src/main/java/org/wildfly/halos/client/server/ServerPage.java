@@ -10,6 +10,7 @@ import org.jboss.elemento.HtmlContentBuilder;
 import org.jboss.elemento.IsElement;
 import org.treblereel.gwt.crysknife.navigation.client.local.Page;
 import org.wildfly.halos.client.dmr.Dispatcher;
+import org.wildfly.halos.client.dmr.ModelNode;
 import org.wildfly.halos.client.dmr.Operation;
 import org.wildfly.halos.client.dmr.ResourceAddress;
 import org.wildfly.halos.client.resources.Pages;
@@ -53,7 +54,12 @@ public class ServerPage implements IsElement<HTMLElement> {
                 .param(INCLUDE_RUNTIME, true)
                 .param(ATTRIBUTES_ONLY, true)
                 .build();
-        dispatcher.execute(operation).then(result -> {
+        // show the result of each instance as soon as it's available
+        ModelNode progress = new ModelNode();
+        dispatcher.execute(operation, instance -> {
+            progress.get(instance.getName()).set(instance.getValue());
+            pre.textContent(progress.toJSONString());
+        }).then(result -> {
             pre.textContent(result.toJSONString());
             return null;
         });
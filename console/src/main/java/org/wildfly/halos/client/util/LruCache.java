@@ -0,0 +1,144 @@
+package org.wildfly.halos.client.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.wildfly.halos.client.util.Preconditions.checkArgument;
+
+/**
+ * Size bounded cache which evicts the least recently used entries. Records hit, miss and eviction counters and
+ * notifies a removal listener about removed entries. Based on {@link LinkedHashMap} in access order, so it works in
+ * GWT and J2CL.
+ */
+public class LruCache<K, V> {
+
+    private final int maximumSize;
+    private final RemovalListener<K, V> removalListener;
+    private final LinkedHashMap<K, V> map;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LruCache(int maximumSize) {
+        this(maximumSize, (key, value, cause) -> {});
+    }
+
+    public LruCache(int maximumSize, RemovalListener<K, V> removalListener) {
+        checkArgument(maximumSize > 0);
+        this.maximumSize = maximumSize;
+        this.removalListener = removalListener;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maximumSize) {
+                    evictions++;
+                    LruCache.this.removalListener.onRemoval(eldest.getKey(), eldest.getValue(), RemovalCause.SIZE);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** @return the value or {@code null} if there's no entry for the key. Counts as hit or miss. */
+    public V get(K key) {
+        V value = map.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /** Neither counts as hit or miss nor changes the access order. */
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    public void put(K key, V value) {
+        V previous = map.put(key, value);
+        if (previous != null && previous != value) {
+            removalListener.onRemoval(key, previous, RemovalCause.REPLACED);
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public V remove(K key) {
+        V removed = map.remove(key);
+        if (removed != null) {
+            removalListener.onRemoval(key, removed, RemovalCause.EXPLICIT);
+        }
+        return removed;
+    }
+
+    public void clear() {
+        for (Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<K, V> entry = iterator.next();
+            iterator.remove();
+            removalListener.onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPLICIT);
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public Statistics statistics() {
+        return new Statistics(map.size(), maximumSize, hits, misses, evictions);
+    }
+
+    // ------------------------------------------------------ inner classes
+
+    public enum RemovalCause {
+        /** The entry was removed by {@link #remove(Object)} or {@link #clear()}. */
+        EXPLICIT,
+
+        /** The value was replaced by {@link #put(Object, Object)}. */
+        REPLACED,
+
+        /** The entry was evicted because the cache exceeded its maximum size. */
+        SIZE
+    }
+
+    @FunctionalInterface
+    public interface RemovalListener<K, V> {
+
+        void onRemoval(K key, V value, RemovalCause cause);
+    }
+
+    /** Snapshot of the cache counters. */
+    public static class Statistics {
+
+        public final int size;
+        public final int maximumSize;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        Statistics(int size, int maximumSize, long hits, long misses, long evictions) {
+            this.size = size;
+            this.maximumSize = maximumSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics(size=" + size + "/" + maximumSize + ", hits=" + hits + ", misses=" + misses +
+                    ", evictions=" + evictions + ")";
+        }
+    }
+}
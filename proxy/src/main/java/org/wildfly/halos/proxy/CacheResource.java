@@ -0,0 +1,34 @@
+package org.wildfly.halos.proxy;
+
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Path("/v1/cache")
+@Produces(MediaType.APPLICATION_JSON)
+public class CacheResource {
+
+    @Inject OperationCache cache;
+    @Inject DescriptionCache descriptions;
+    @Inject Instances instances;
+
+    @GET
+    public CacheStatistics statistics() {
+        CacheStatistics statistics = cache.statistics();
+        statistics.coalesced = instances.coalesced();
+        statistics.descriptionHits = descriptions.hits();
+        statistics.descriptionMisses = descriptions.misses();
+        return statistics;
+    }
+
+    @DELETE
+    public Response clear() {
+        cache.clear();
+        descriptions.clear();
+        return Response.noContent().build();
+    }
+}
@@ -0,0 +1,25 @@
+package org.wildfly.halos.proxy;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Hit, miss and eviction counters of the {@link OperationCache}, the number of coalesced reads and the
+ * hits and misses of the shared {@link DescriptionCache}
+ */
+@RegisterForReflection
+public class CacheStatistics {
+
+    public boolean enabled;
+    public int size;
+    public int maxSize;
+    public long ttl;
+    public long hits;
+    public long misses;
+    public double hitRate;
+    public long evictions;
+    public long expirations;
+    public long invalidations;
+    public long coalesced;
+    public long descriptionHits;
+    public long descriptionMisses;
+}
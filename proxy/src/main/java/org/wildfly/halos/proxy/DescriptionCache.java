@@ -0,0 +1,599 @@
+package org.wildfly.halos.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+import org.jboss.logging.Logger;
+
+import static org.jboss.as.controller.client.helpers.ClientConstants.*;
+
+/**
+ * Shares resource descriptions across instances.
+ * <p>
+ * Resource descriptions depend only on the product version and the installed subsystems, not on the instance. When
+ * an instance is registered, a fingerprint consisting of product name, product version and installed subsystems is
+ * computed. Results of {@code read-resource-description} operations are then cached by fingerprint and normalized
+ * operation and used for all instances with the same fingerprint.
+ * <p>
+ * At most {@code halos.proxy.description-cache.max-size} descriptions are kept, the least recently used ones are
+ * evicted. If {@code halos.proxy.description-cache.directory} is configured, descriptions are persisted to this
+ * directory, so a proxy restart starts with a warm cache. Evicted descriptions are removed from the directory as well
+ * and the directory is pruned to the maximum size on startup.
+ * <p>
+ * Access control information depends on the user and the roles of the request as well as on the access control
+ * configuration of the instance. That's why only the description part of a {@code read-resource-description}
+ * operation with {@code access-control=combined-descriptions} is cached. On a hit, the access control part is read
+ * from the instance using {@code access-control=trim-descriptions}, which skips the descriptions and is much
+ * smaller, and merged into the cached description. Operations with {@code access-control=trim-descriptions} only
+ * are not cached at all.
+ */
+@ApplicationScoped
+class DescriptionCache {
+
+    private static final String ACCESS_CONTROL = "access-control";
+    private static final String ATTRIBUTES_ONLY = "attributes-only";
+    private static final String CHILD_TYPE = "child-type";
+    private static final String CHILDREN = "children";
+    private static final String COMBINED_DESCRIPTIONS = "combined-descriptions";
+    private static final String MODEL_DESCRIPTION = "model-description";
+    private static final String NONE = "none";
+    private static final String PRODUCT_NAME = "product-name";
+    private static final String PRODUCT_VERSION = "product-version";
+    private static final String READ_CHILDREN_NAMES = "read-children-names";
+    private static final String READ_RESOURCE = "read-resource";
+    private static final String READ_RESOURCE_DESCRIPTION = "read-resource-description";
+    private static final String RELEASE_VERSION = "release-version";
+    private static final String SUBSYSTEM = "subsystem";
+    private static final String TRIM_DESCRIPTIONS = "trim-descriptions";
+    private static Logger log = Logger.getLogger("halos.proxy.descriptions");
+
+    /** @return whether the operation is a resource description or a composite consisting only of those */
+    static boolean isDescription(ModelNode operation) {
+        String name = operation.get(OP).asString();
+        if (COMPOSITE.equals(name)) {
+            if (!operation.hasDefined(STEPS)) {
+                return false;
+            }
+            for (ModelNode step : operation.get(STEPS).asList()) {
+                if (!isDescription(step)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return READ_RESOURCE_DESCRIPTION.equals(name);
+    }
+
+    /** @return whether the operation or one of its steps asks for access control information */
+    static boolean isAccessControl(ModelNode operation) {
+        if (COMPOSITE.equals(operation.get(OP).asString())) {
+            for (ModelNode step : operation.get(STEPS).asList()) {
+                if (isAccessControl(step)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return !NONE.equals(accessControl(operation));
+    }
+
+    /**
+     * @return a copy of the operation which reads the access control part only, that is with
+     * {@code access-control=trim-descriptions} for all resource descriptions
+     */
+    static ModelNode accessControlOperation(ModelNode operation) {
+        ModelNode accessControl = operation.clone();
+        trim(accessControl);
+        return accessControl;
+    }
+
+    private static void trim(ModelNode operation) {
+        if (COMPOSITE.equals(operation.get(OP).asString())) {
+            // asList() returns a new list
+            List<ModelNode> steps = operation.get(STEPS).asList();
+            for (ModelNode step : steps) {
+                trim(step);
+            }
+            operation.get(STEPS).set(steps);
+        } else {
+            operation.get(ACCESS_CONTROL).set(TRIM_DESCRIPTIONS);
+        }
+    }
+
+    private static String accessControl(ModelNode operation) {
+        return operation.hasDefined(ACCESS_CONTROL) ? operation.get(ACCESS_CONTROL).asString() : NONE;
+    }
+
+    private final boolean enabled;
+    private final int maxSize;
+    private volatile Path directory;
+    private final ConcurrentMap<String, String> fingerprints;
+    private final LinkedHashMap<String, ModelNode> descriptions;
+    private final List<String> evicted;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    @Inject
+    DescriptionCache(
+            @ConfigProperty(name = "halos.proxy.description-cache.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "halos.proxy.description-cache.max-size", defaultValue = "500") int maxSize,
+            @ConfigProperty(name = "halos.proxy.description-cache.directory") Optional<String> directory) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.directory = directory.map(Paths::get).orElse(null);
+        this.fingerprints = new ConcurrentHashMap<>();
+        this.evicted = new ArrayList<>();
+        this.descriptions = new LinkedHashMap<String, ModelNode>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ModelNode> eldest) {
+                if (size() > DescriptionCache.this.maxSize) {
+                    // deleted by the caller outside the lock
+                    evicted.add(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        prune(maxSize);
+    }
+
+    // ------------------------------------------------------ fingerprints
+
+    /**
+     * Reads product name, product version and subsystems of the instance behind the client and assigns the
+     * resulting fingerprint to the instance.
+     */
+    void fingerprint(String instance, ModelControllerClient client) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        ModelNode readResource = new ModelNode();
+        readResource.get(OP).set(READ_RESOURCE);
+        readResource.get(OP_ADDR).setEmptyList();
+        readResource.get(ATTRIBUTES_ONLY).set(true);
+        ModelNode root = client.execute(readResource);
+
+        ModelNode readSubsystems = new ModelNode();
+        readSubsystems.get(OP).set(READ_CHILDREN_NAMES);
+        readSubsystems.get(OP_ADDR).setEmptyList();
+        readSubsystems.get(CHILD_TYPE).set(SUBSYSTEM);
+        ModelNode subsystems = client.execute(readSubsystems);
+
+        if (SUCCESS.equals(root.get(OUTCOME).asString()) && SUCCESS.equals(subsystems.get(OUTCOME).asString())) {
+            ModelNode result = root.get(RESULT);
+            String product = result.get(PRODUCT_NAME).asString("WildFly");
+            String version = result.hasDefined(PRODUCT_VERSION)
+                    ? result.get(PRODUCT_VERSION).asString()
+                    : result.get(RELEASE_VERSION).asString();
+            List<String> names = new ArrayList<>();
+            for (ModelNode name : subsystems.get(RESULT).asList()) {
+                names.add(name.asString());
+            }
+            Collections.sort(names);
+            String fingerprint = product + "-" + version + "-" + digest(String.join(",", names)).substring(0, 16);
+            fingerprints.put(instance, fingerprint);
+            log.infof("Assigned description fingerprint %s to %s", fingerprint, instance);
+        } else {
+            fingerprints.remove(instance);
+            log.warnf("Unable to compute description fingerprint for %s", instance);
+        }
+    }
+
+    /**
+     * Removes the fingerprint of the instance. Until a new fingerprint is assigned, descriptions of the instance are
+     * neither served from nor added to this cache.
+     */
+    void forget(String instance) {
+        fingerprints.remove(instance);
+    }
+
+    // ------------------------------------------------------ descriptions
+
+    /** @return the key of the operation or {@code null} if the operation can't be served by this cache */
+    String key(Instance instance, ModelNode operation) {
+        if (enabled && isDescription(operation) && describes(operation)) {
+            String fingerprint = fingerprints.get(instance.name);
+            if (fingerprint != null) {
+                StringBuilder builder = new StringBuilder(fingerprint).append('|');
+                // without access control information, descriptions don't depend on the roles of the request
+                ModelNode normalized = operation.clone();
+                normalized.remove(OPERATION_HEADERS);
+                normalize(normalized);
+                canonical(normalized, builder);
+                return digest(builder.toString());
+            }
+        }
+        return null;
+    }
+
+    /** @return a copy of the cached description or {@code null} if there's no cached description for the key */
+    ModelNode get(String key) {
+        ModelNode description;
+        synchronized (descriptions) {
+            description = descriptions.get(key);
+        }
+        if (description == null) {
+            description = load(key);
+            if (description != null) {
+                List<String> deletions;
+                synchronized (descriptions) {
+                    descriptions.putIfAbsent(key, description);
+                    deletions = drainEvicted();
+                }
+                deletions.forEach(this::delete);
+            }
+        }
+        if (description != null) {
+            hits.incrementAndGet();
+            return description.clone();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds the result of the operation to this cache. Access control information is removed from the result, only
+     * the description part is cached.
+     */
+    void put(String key, ModelNode operation, ModelNode result) {
+        if (SUCCESS.equals(result.get(OUTCOME).asString())) {
+            ModelNode description = result.clone();
+            removeAccessControl(operation, description);
+            boolean added;
+            List<String> deletions;
+            synchronized (descriptions) {
+                added = descriptions.putIfAbsent(key, description) == null;
+                deletions = drainEvicted();
+            }
+            deletions.forEach(this::delete);
+            if (added) {
+                store(key, description);
+            }
+        }
+    }
+
+    /**
+     * Merges the result of the {@linkplain #accessControlOperation(ModelNode) access control operation} into a cached
+     * description: Steps with {@code access-control=combined-descriptions} get the access control part of the
+     * related step, steps with {@code access-control=trim-descriptions} are replaced by the related step.
+     *
+     * @return the merged result or {@code null} if the access control result doesn't match the description, e.g.
+     * because the access control operation failed
+     */
+    ModelNode merge(ModelNode operation, ModelNode description, ModelNode accessControl) {
+        if (!SUCCESS.equals(accessControl.get(OUTCOME).asString())) {
+            return null;
+        }
+        if (COMPOSITE.equals(operation.get(OP).asString())) {
+            List<ModelNode> steps = operation.get(STEPS).asList();
+            for (int i = 0; i < steps.size(); i++) {
+                String step = "step-" + (i + 1);
+                if (!description.get(RESULT).has(step) || !accessControl.get(RESULT).has(step)) {
+                    return null;
+                }
+                ModelNode target = description.get(RESULT, step);
+                ModelNode merged = merge(steps.get(i), target, accessControl.get(RESULT, step));
+                if (merged == null) {
+                    return null;
+                } else if (merged != target) {
+                    target.set(merged);
+                }
+            }
+            return description;
+        }
+        switch (accessControl(operation)) {
+            case TRIM_DESCRIPTIONS:
+                return accessControl;
+            case COMBINED_DESCRIPTIONS:
+                return copyAccessControl(accessControl.get(RESULT), description.get(RESULT)) ? description : null;
+            default:
+                return description;
+        }
+    }
+
+    /** Removes all descriptions from memory and from the directory. Fingerprints are kept. */
+    void clear() {
+        synchronized (descriptions) {
+            descriptions.clear();
+        }
+        prune(0);
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    private List<String> drainEvicted() {
+        if (evicted.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>(evicted);
+        evicted.clear();
+        return keys;
+    }
+
+    // ------------------------------------------------------ persistence
+
+    private ModelNode load(String key) {
+        if (directory != null) {
+            Path file = directory.resolve(key);
+            if (Files.isRegularFile(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    ModelNode description = ModelNode.fromStream(in);
+                    // keep recently used descriptions when pruning
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                    return description;
+                } catch (IOException e) {
+                    log.warnf("Unable to read resource description from %s: %s", file, e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+    private void delete(String key) {
+        Path path = directory;
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path.resolve(key));
+            } catch (IOException e) {
+                log.warnf("Unable to delete resource description %s from %s: %s", key, path, e.getMessage());
+            }
+        }
+    }
+
+    /** Keeps the {@code keep} most recently modified descriptions in the directory and deletes all others. */
+    private void prune(int keep) {
+        Path path = directory;
+        if (path != null && Files.isDirectory(path)) {
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(path)) {
+                files = stream.filter(Files::isRegularFile)
+                        .sorted(Comparator.comparingLong(DescriptionCache::lastModified).reversed())
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                log.warnf("Unable to prune resource descriptions in %s: %s", path, e.getMessage());
+                return;
+            }
+            for (Path file : files.subList(Math.min(keep, files.size()), files.size())) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warnf("Unable to delete %s: %s", file, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void store(String key, ModelNode description) {
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                Path temp = Files.createTempFile(directory, key, ".tmp");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    description.writeExternal(out);
+                }
+                Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warnf("Unable to persist resource descriptions to %s: %s. Disable persistence.", directory,
+                        e.getMessage());
+                directory = null;
+            }
+        }
+    }
+
+    // ------------------------------------------------------ internals
+
+    /** @return whether the operation reads at least one description which is not trimmed */
+    private boolean describes(ModelNode operation) {
+        if (COMPOSITE.equals(operation.get(OP).asString())) {
+            for (ModelNode step : operation.get(STEPS).asList()) {
+                if (describes(step)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return !TRIM_DESCRIPTIONS.equals(accessControl(operation));
+    }
+
+    /**
+     * Removes {@code access-control=combined-descriptions}, so that the key of the operation is the same as without
+     * access control. Trimmed descriptions are kept as part of the key.
+     */
+    private void normalize(ModelNode operation) {
+        if (COMPOSITE.equals(operation.get(OP).asString())) {
+            List<ModelNode> steps = operation.get(STEPS).asList();
+            for (ModelNode step : steps) {
+                normalize(step);
+            }
+            operation.get(STEPS).set(steps);
+        } else if (!TRIM_DESCRIPTIONS.equals(accessControl(operation))) {
+            operation.remove(ACCESS_CONTROL);
+        }
+    }
+
+    private void removeAccessControl(ModelNode operation, ModelNode result) {
+        if (COMPOSITE.equals(operation.get(OP).asString())) {
+            List<ModelNode> steps = operation.get(STEPS).asList();
+            for (int i = 0; i < steps.size(); i++) {
+                String step = "step-" + (i + 1);
+                if (result.get(RESULT).has(step)) {
+                    removeAccessControl(steps.get(i), result.get(RESULT, step));
+                }
+            }
+        } else if (isAccessControl(operation) && result.hasDefined(RESULT)) {
+            removeAccessControl(result.get(RESULT));
+        }
+    }
+
+    /** Removes the access control part from a description, its nested child descriptions and wildcard results. */
+    private void removeAccessControl(ModelNode description) {
+        if (description.getType() == ModelType.LIST) {
+            List<ModelNode> results = description.asList();
+            for (ModelNode result : results) {
+                if (result.hasDefined(RESULT)) {
+                    removeAccessControl(result.get(RESULT));
+                }
+            }
+            description.set(results);
+            return;
+        }
+        description.remove(ACCESS_CONTROL);
+        if (description.hasDefined(CHILDREN)) {
+            for (String type : description.get(CHILDREN).keys()) {
+                ModelNode child = description.get(CHILDREN, type);
+                if (child.hasDefined(MODEL_DESCRIPTION)) {
+                    for (String name : child.get(MODEL_DESCRIPTION).keys()) {
+                        removeAccessControl(child.get(MODEL_DESCRIPTION, name));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the access control part from the trimmed description {@code from} to the description {@code to},
+     * following nested child descriptions and wildcard results.
+     *
+     * @return {@code false} if the structure of the descriptions doesn't match
+     */
+    private boolean copyAccessControl(ModelNode from, ModelNode to) {
+        if (from.getType() == ModelType.LIST) {
+            if (to.getType() != ModelType.LIST) {
+                return false;
+            }
+            List<ModelNode> sources = from.asList();
+            List<ModelNode> targets = to.asList();
+            if (sources.size() != targets.size()) {
+                return false;
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                ModelNode source = sources.get(i);
+                ModelNode target = targets.get(i);
+                if (!source.get(OP_ADDR).equals(target.get(OP_ADDR))) {
+                    return false;
+                }
+                if (source.hasDefined(RESULT)) {
+                    if (!target.hasDefined(RESULT) || !copyAccessControl(source.get(RESULT), target.get(RESULT))) {
+                        return false;
+                    }
+                }
+            }
+            to.set(targets);
+            return true;
+        }
+        if (from.hasDefined(ACCESS_CONTROL)) {
+            to.get(ACCESS_CONTROL).set(from.get(ACCESS_CONTROL));
+        }
+        if (from.hasDefined(CHILDREN)) {
+            for (String type : from.get(CHILDREN).keys()) {
+                ModelNode child = from.get(CHILDREN, type);
+                if (child.hasDefined(MODEL_DESCRIPTION)) {
+                    if (!to.hasDefined(CHILDREN) || !to.get(CHILDREN).hasDefined(type)
+                            || !to.get(CHILDREN, type).hasDefined(MODEL_DESCRIPTION)) {
+                        return false;
+                    }
+                    ModelNode descriptions = to.get(CHILDREN, type, MODEL_DESCRIPTION);
+                    for (String name : child.get(MODEL_DESCRIPTION).keys()) {
+                        if (!descriptions.hasDefined(name)
+                                || !copyAccessControl(child.get(MODEL_DESCRIPTION, name), descriptions.get(name))) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Appends a string representation of the node which doesn't depend on the order of object keys. */
+    private void canonical(ModelNode node, StringBuilder builder) {
+        switch (node.getType()) {
+            case OBJECT:
+                List<String> keys = new ArrayList<>(node.keys());
+                Collections.sort(keys);
+                builder.append('{');
+                for (String key : keys) {
+                    builder.append(key).append('=');
+                    canonical(node.get(key), builder);
+                    builder.append(',');
+                }
+                builder.append('}');
+                break;
+            case LIST:
+                builder.append('[');
+                for (ModelNode element : node.asList()) {
+                    canonical(element, builder);
+                    builder.append(',');
+                }
+                builder.append(']');
+                break;
+            case PROPERTY:
+                Property property = node.asProperty();
+                builder.append(property.getName()).append('=');
+                canonical(property.getValue(), builder);
+                break;
+            default:
+                builder.append(node.getType()).append(':').append(node.asString());
+                break;
+        }
+    }
+
+    private static String digest(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(value.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
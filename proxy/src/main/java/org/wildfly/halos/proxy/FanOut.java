@@ -0,0 +1,109 @@
+package org.wildfly.halos.proxy;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Bounded thread pool which runs tasks with a deadline.
+ * <p>
+ * The deadline starts when a task starts running, not when it's submitted. Tasks which wait in the queue because all
+ * threads are busy don't lose any of their time. The returned futures always complete normally: with the result of
+ * the task, with the value of the timeout function if the task doesn't finish in time (the task is then interrupted)
+ * or with the value of the error function if the task fails.
+ */
+class FanOut {
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final long timeout;
+
+    FanOut(String name, int threads, long timeout) {
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory(name));
+        this.timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(name + "-timer"));
+        this.timeout = timeout;
+    }
+
+    <T> CompletableFuture<T> submit(Callable<T> task, Supplier<T> timedOut, Function<Throwable, T> failed) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<T> execution = new FutureTask<T>(task) {
+            @Override
+            public void run() {
+                ScheduledFuture<?> deadline = timer.schedule(() -> {
+                    if (result.complete(timedOut.get())) {
+                        cancel(true);
+                    }
+                }, timeout, MILLISECONDS);
+                try {
+                    super.run();
+                } finally {
+                    deadline.cancel(false);
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return; // already completed by the deadline
+                }
+                try {
+                    result.complete(get());
+                } catch (ExecutionException e) {
+                    result.complete(failed.apply(e.getCause()));
+                } catch (InterruptedException | CancellationException e) {
+                    result.complete(failed.apply(e));
+                }
+            }
+        };
+        try {
+            executor.execute(execution);
+        } catch (RejectedExecutionException e) {
+            result.complete(failed.apply(e));
+        }
+        return result;
+    }
+
+    /** Runs the task on the pool without a deadline. */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    long timeout() {
+        return timeout;
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.wildfly.halos.proxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+
+/**
+ * Thread safe registry of instances and their management clients.
+ * <p>
+ * Lookups by name are O(1) and never block. Iteration uses an immutable snapshot sorted by instance name, which is
+ * replaced (copy-on-write) whenever an instance is added or removed. Operations which iterate over a snapshot are
+ * therefore not affected by concurrent modifications.
+ */
+class InstanceRegistry {
+
+    private static final Connection[] EMPTY = new Connection[0];
+
+    private final ConcurrentMap<String, Connection> connections;
+    private final Object lock;
+    private volatile Connection[] snapshot;
+
+    InstanceRegistry() {
+        this.connections = new ConcurrentHashMap<>();
+        this.lock = new Object();
+        this.snapshot = EMPTY;
+    }
+
+    /** @return the previous connection or {@code null} if there was no connection for the instance */
+    Connection put(Instance instance, ModelControllerClient client) {
+        Connection connection = new Connection(instance, client);
+        synchronized (lock) {
+            Connection previous = connections.put(instance.name, connection);
+            Connection[] current = snapshot;
+            int index = Arrays.binarySearch(current, connection);
+            Connection[] next;
+            if (index >= 0) {
+                next = current.clone();
+                next[index] = connection;
+            } else {
+                int insert = -index - 1;
+                next = new Connection[current.length + 1];
+                System.arraycopy(current, 0, next, 0, insert);
+                next[insert] = connection;
+                System.arraycopy(current, insert, next, insert + 1, current.length - insert);
+            }
+            snapshot = next;
+            return previous;
+        }
+    }
+
+    /** @return the removed connection or {@code null} if there was no connection for the name */
+    Connection remove(String name) {
+        synchronized (lock) {
+            Connection removed = connections.remove(name);
+            if (removed != null) {
+                Connection[] current = snapshot;
+                int index = Arrays.binarySearch(current, removed);
+                if (index >= 0) {
+                    Connection[] next = new Connection[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, index);
+                    System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                    snapshot = next;
+                }
+            }
+            return removed;
+        }
+    }
+
+    Connection get(String name) {
+        return connections.get(name);
+    }
+
+    boolean contains(String name) {
+        return connections.containsKey(name);
+    }
+
+    boolean isEmpty() {
+        return snapshot.length == 0;
+    }
+
+    /** @return an immutable snapshot of all connections sorted by instance name */
+    List<Connection> snapshot() {
+        return Collections.unmodifiableList(Arrays.asList(snapshot));
+    }
+
+    List<Instance> instances() {
+        Connection[] current = snapshot;
+        List<Instance> instances = new ArrayList<>(current.length);
+        for (Connection connection : current) {
+            instances.add(connection.instance);
+        }
+        return Collections.unmodifiableList(instances);
+    }
+
+    /** An instance together with its management client. */
+    static class Connection implements Comparable<Connection> {
+
+        final Instance instance;
+        final ModelControllerClient client;
+
+        Connection(Instance instance, ModelControllerClient client) {
+            this.instance = instance;
+            this.client = client;
+        }
+
+        @Override
+        public int compareTo(Connection o) {
+            return instance.compareTo(o.instance);
+        }
+
+        @Override
+        public String toString() {
+            return instance.toString();
+        }
+    }
+}
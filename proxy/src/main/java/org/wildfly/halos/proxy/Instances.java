@@ -5,10 +5,12 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.security.auth.callback.Callback;
@@ -19,35 +21,58 @@ import javax.security.sasl.RealmCallback;
 
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.operators.multi.processors.UnicastProcessor;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.as.controller.client.ModelControllerClient;
 import org.jboss.as.controller.client.Operation;
 import org.jboss.as.controller.client.helpers.ClientConstants;
 import org.jboss.dmr.ModelNode;
 import org.jboss.logging.Logger;
 import org.wildfly.halos.proxy.InstanceModification.Modification;
+import org.wildfly.halos.proxy.InstanceRegistry.Connection;
 
-import static java.util.Collections.unmodifiableList;
-
-/** Manages connections to the WildFly management endpoints and execute DMR operations. */
+/**
+ * Manages connections to the WildFly management endpoints and execute DMR operations.
+ * <p>
+ * Operations are executed concurrently against all instances using a bounded thread pool. Each instance has to answer
+ * within a configurable deadline, which starts when the operation is actually sent. Instances which don't make it in
+ * time or fail with an exception, are reported with a {@code failed} outcome.
+ */
 @ApplicationScoped
 class Instances {
 
     private static final String REMOTE_HTTP = "remote+http";
     private static Logger log = Logger.getLogger("halos.proxy.dispatcher");
 
-    private final SortedMap<Instance, ModelControllerClient> clients;
+    private final InstanceRegistry registry;
+    private final OperationCache cache;
+    private final DescriptionCache descriptions;
+    private final ConcurrentMap<OperationKey, CompletableFuture<ModelNode>> inflight;
+    private final AtomicLong coalesced;
     private final UnicastProcessor<InstanceModification> processor;
     private final Multi<InstanceModification> modifications;
+    private final FanOut fanOut;
 
     @Inject
-    Instances() {
-        this.clients = new TreeMap<>();
+    Instances(OperationCache cache, DescriptionCache descriptions,
+            @ConfigProperty(name = "halos.proxy.fan-out.threads", defaultValue = "16") int threads,
+            @ConfigProperty(name = "halos.proxy.fan-out.timeout", defaultValue = "30000") long timeout) {
+        this.registry = new InstanceRegistry();
+        this.cache = cache;
+        this.descriptions = descriptions;
+        this.inflight = new ConcurrentHashMap<>();
+        this.coalesced = new AtomicLong();
+        this.fanOut = new FanOut("halos-fan-out", threads, timeout);
         this.processor = UnicastProcessor.create();
         this.modifications = processor
                 .broadcast().toAllSubscribers()
                 .on().overflow().dropPreviousItems();
     }
 
+    @PreDestroy
+    void shutdown() {
+        fanOut.shutdown();
+    }
+
     void register(Instance instance) throws ManagementException {
         try {
             InetAddress address = InetAddress.getByName(instance.host);
@@ -68,10 +93,19 @@ class Instances {
                             }
                         }
                     });
-            ModelControllerClient added = clients.put(instance, client);
+            Connection added = registry.put(instance, client);
             Modification modification = added != null ? Modification.MODIFIED : Modification.ADDED;
+            if (modification == Modification.MODIFIED) {
+                // the name might point to a different server now
+                cache.invalidate(instance.name);
+                descriptions.forget(instance.name);
+            }
             processor.onNext(new InstanceModification(modification, instance.name));
             log.infof("Registered client for %s.", instance);
+            Connection connection = registry.get(instance.name);
+            if (connection != null) {
+                fingerprint(connection);
+            }
         } catch (UnknownHostException e) {
             String error = String.format("Unable to connect to instance %s: %s", instance, e.getMessage());
             log.error(error);
@@ -80,51 +114,89 @@ class Instances {
     }
 
     void unregister(String name) throws ManagementException {
-        Map.Entry<Instance, ModelControllerClient> entry = findByName(name);
-        if (entry != null) {
-            Instance instance = entry.getKey();
-            ModelControllerClient client = entry.getValue();
+        // remove first, so that no new operations are routed to the client we're about to close
+        Connection connection = registry.remove(name);
+        if (connection != null) {
+            Instance instance = connection.instance;
+            cache.invalidate(instance.name);
+            descriptions.forget(instance.name);
             try {
-                client.close();
+                connection.client.close();
                 log.infof("Closed client for %s", instance);
             } catch (IOException e) {
                 String error = String.format("Unable to close client for %s: %s", instance, e.getMessage());
                 log.error(error);
                 throw new ManagementException(error, e);
             } finally {
-                clients.remove(instance);
                 processor.onNext(new InstanceModification(Modification.REMOVED, instance.name));
             }
         }
     }
 
     boolean isEmpty() {
-        return clients.isEmpty();
+        return registry.isEmpty();
     }
 
     boolean hasInstance(String name) {
-        return findByName(name) != null;
+        return registry.contains(name);
     }
 
     public List<Instance> instances() {
-        return unmodifiableList(new ArrayList<>(clients.keySet()));
+        return registry.instances();
     }
 
     Multi<InstanceModification> modifications() {
         return modifications;
     }
 
+    /** @return the number of read operations which shared the result of an identical in-flight operation */
+    long coalesced() {
+        return coalesced.get();
+    }
+
     ModelNode execute(Operation operation) {
+        List<Connection> connections = registry.snapshot();
+        List<CompletableFuture<ModelNode>> futures = new ArrayList<>(connections.size());
+        for (Connection connection : connections) {
+            futures.add(submit(connection, operation));
+        }
+
         ModelNode result = new ModelNode();
-        clients.forEach((instance, client) -> executeAndWrap(client, operation, instance, result));
+        for (int i = 0; i < connections.size(); i++) {
+            result.get(connections.get(i).instance.name).set(futures.get(i).join());
+        }
         return result;
     }
 
+    /**
+     * Executes the operation against all instances and emits the result of each instance as soon as it's available.
+     * Each item is a model node with the name of the instance as key and the result as value.
+     */
+    Multi<ModelNode> stream(Operation operation) {
+        return Multi.createFrom().emitter(emitter -> {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Connection connection : registry.snapshot()) {
+                futures.add(submit(connection, operation).thenAccept(result -> {
+                    ModelNode modelNode = new ModelNode();
+                    modelNode.get(connection.instance.name).set(result);
+                    emitter.emit(modelNode);
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((ignore, error) -> {
+                if (error != null) {
+                    emitter.fail(error);
+                } else {
+                    emitter.complete();
+                }
+            });
+        });
+    }
+
     ModelNode executeSingle(String name, Operation operation) {
-        Map.Entry<Instance, ModelControllerClient> entry = findByName(name);
-        if (entry != null) {
+        Connection connection = registry.get(name);
+        if (connection != null) {
             ModelNode result = new ModelNode();
-            executeAndWrap(entry.getValue(), operation, entry.getKey(), result);
+            result.get(name).set(submit(connection, operation).join());
             return result;
         } else {
             log.errorf("Unable to find client for instance %1s. Did you register %1s?", name);
@@ -132,27 +204,140 @@ class Instances {
         }
     }
 
-    private void executeAndWrap(ModelControllerClient client, Operation operation,
-            Instance instance, ModelNode modelNode) {
-        ModelNode result;
+    /**
+     * Executes the operation on the fan-out executor. The returned future is completed with a {@code failed} outcome
+     * if the instance doesn't answer within the deadline or if the execution fails. In case of a timeout the pending
+     * execution is cancelled.
+     * <p>
+     * Identical read-only operations (including their headers) which are executed concurrently against the same
+     * instance are coalesced: Only the first one is sent to the instance, all others share a copy of its result.
+     * They don't occupy a thread while waiting and are bound by the deadline of the first operation.
+     */
+    private CompletableFuture<ModelNode> submit(Connection connection, Operation operation) {
+        ModelNode modelNode = operation.getOperation();
+        if (!OperationCache.isReadOnly(modelNode)) {
+            return fanOut.submit(() -> write(connection, operation),
+                    () -> timedOut(operation, connection.instance),
+                    error -> failed(operation, connection.instance, error));
+        }
+
+        OperationKey key = new OperationKey(connection.instance.name, modelNode);
+        CompletableFuture<ModelNode> flight = new CompletableFuture<>();
+        CompletableFuture<ModelNode> pending = inflight.putIfAbsent(key, flight);
+        if (pending != null) {
+            coalesced.incrementAndGet();
+            return pending.thenApply(ModelNode::clone);
+        }
+        fanOut.submit(() -> read(connection, operation, key),
+                () -> timedOut(operation, connection.instance),
+                error -> failed(operation, connection.instance, error))
+                .thenAccept(result -> {
+                    inflight.remove(key, flight);
+                    flight.complete(result);
+                });
+        return flight;
+    }
+
+    private ModelNode write(Connection connection, Operation operation) {
+        ModelNode modelNode = operation.getOperation();
+        ModelNode result = execute(connection, operation);
+        cache.invalidate(connection.instance.name, modelNode);
+        if (modifiesSubsystems(modelNode)) {
+            // stop sharing descriptions right away, the new fingerprint is computed in the background
+            descriptions.forget(connection.instance.name);
+            fingerprint(connection);
+        }
+        return result;
+    }
+
+    private ModelNode read(Connection connection, Operation operation, OperationKey key) {
+        ModelNode modelNode = operation.getOperation();
+        String descriptionKey = descriptions.key(connection.instance, modelNode);
+        if (descriptionKey != null) {
+            ModelNode description = descriptions.get(descriptionKey);
+            if (description == null) {
+                ModelNode result = execute(connection, operation);
+                descriptions.put(descriptionKey, modelNode, result);
+                return result;
+            } else if (!DescriptionCache.isAccessControl(modelNode)) {
+                return description;
+            }
+            // the access control part depends on the instance and the user, read it without the descriptions
+            ModelNode accessControl = execute(connection,
+                    Operation.Factory.create(DescriptionCache.accessControlOperation(modelNode)));
+            ModelNode merged = descriptions.merge(modelNode, description, accessControl);
+            return merged != null ? merged : execute(connection, operation);
+
+        } else if (cache.cacheable(operation.getOperation())) {
+            ModelNode cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            long token = cache.token(key.instance);
+            ModelNode result = execute(connection, operation);
+            cache.put(key, result, token);
+            return result;
+        } else {
+            return execute(connection, operation);
+        }
+    }
+
+    private ModelNode execute(Connection connection, Operation operation) {
         try {
-            result = client.execute(operation);
+            return connection.client.execute(operation);
         } catch (IOException e) {
             log.errorf("Error executing operation %s against %s: %s",
-                    operation.getOperation().toJSONString(true), instance, e.getMessage());
-            result = new ModelNode();
-            result.get(ClientConstants.OUTCOME).set("failed");
-            result.get(ClientConstants.FAILURE_DESCRIPTION).set(e.getMessage());
+                    operation.getOperation().toJSONString(true), connection.instance, e.getMessage());
+            return failed(e.getMessage());
         }
-        modelNode.get(instance.name).set(result);
     }
 
-    private Map.Entry<Instance, ModelControllerClient> findByName(String name) {
-        for (Map.Entry<Instance, ModelControllerClient> entry : clients.entrySet()) {
-            if (name.equals(entry.getKey().name)) {
-                return entry;
+    /** Computes the description fingerprint of the instance in the background. */
+    private void fingerprint(Connection connection) {
+        fanOut.execute(() -> {
+            try {
+                descriptions.fingerprint(connection.instance.name, connection.client);
+            } catch (IOException e) {
+                descriptions.forget(connection.instance.name);
+                log.warnf("Unable to compute description fingerprint for %s: %s", connection.instance,
+                        e.getMessage());
             }
+        });
+    }
+
+    /** @return whether the operation might add or remove subsystems or extensions */
+    private boolean modifiesSubsystems(ModelNode operation) {
+        if (ClientConstants.COMPOSITE.equals(operation.get(ClientConstants.OP).asString())
+                && operation.hasDefined(ClientConstants.STEPS)) {
+            for (ModelNode step : operation.get(ClientConstants.STEPS).asList()) {
+                if (modifiesSubsystems(step)) {
+                    return true;
+                }
+            }
+            return false;
         }
-        return null;
+        List<String> address = OperationKey.segments(operation);
+        return address.size() == 1 && (address.get(0).startsWith("subsystem=") ||
+                address.get(0).startsWith("extension="));
+    }
+
+    private ModelNode timedOut(Operation operation, Instance instance) {
+        String error = String.format("Operation timed out after %d ms", fanOut.timeout());
+        log.errorf("Error executing operation %s against %s: %s",
+                operation.getOperation().toJSONString(true), instance, error);
+        return failed(error);
+    }
+
+    private ModelNode failed(Operation operation, Instance instance, Throwable error) {
+        log.errorf(error, "Error executing operation %s against %s", operation.getOperation().toJSONString(true),
+                instance);
+        return failed(String.valueOf(error.getMessage()));
+    }
+
+    private ModelNode failed(String failure) {
+        ModelNode result = new ModelNode();
+        result.get(ClientConstants.OUTCOME).set("failed");
+        result.get(ClientConstants.FAILURE_DESCRIPTION).set(failure);
+        return result;
     }
 }
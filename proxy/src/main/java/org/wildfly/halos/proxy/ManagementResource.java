@@ -5,35 +5,51 @@ import java.io.InputStream;
 
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import io.smallrye.mutiny.Multi;
 import org.jboss.as.controller.client.Operation;
 import org.jboss.dmr.ModelNode;
 
+import static org.wildfly.halos.proxy.ManagementResource.DMR_BINARY;
 import static org.wildfly.halos.proxy.ManagementResource.DMR_ENCODED;
 
+/**
+ * Executes DMR operations against the registered instances. Operations and results are exchanged either base64
+ * encoded ({@value DMR_ENCODED}) or in the raw binary DMR format ({@value DMR_BINARY}). The format of the request is
+ * taken from the {@code Content-Type} header, the format of the response is negotiated using the {@code Accept}
+ * header.
+ */
 @Path("/v1/management")
-@Consumes(DMR_ENCODED)
-@Produces(DMR_ENCODED)
+@Consumes({DMR_BINARY, DMR_ENCODED})
+@Produces({DMR_BINARY, DMR_ENCODED})
 public class ManagementResource {
 
+    static final String DMR_BINARY = "application/dmr-binary";
     static final String DMR_ENCODED = "application/dmr-encoded";
 
+    static boolean isBinary(MediaType mediaType) {
+        return mediaType != null && mediaType.isCompatible(MediaType.valueOf(DMR_BINARY));
+    }
+
     @Inject
     Instances instances;
 
     @POST
-    public Response execute(InputStream inputStream) {
+    public Response execute(@HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType, InputStream inputStream) {
         if (instances.isEmpty()) {
             return Response.status(Status.NOT_FOUND).entity("No instances registered.").build();
         } else {
             try {
-                ModelNode modelNode = ModelNode.fromBase64(inputStream);
+                ModelNode modelNode = readOperation(contentType, inputStream);
                 Operation operation = Operation.Factory.create(modelNode);
                 ModelNode result = instances.execute(operation);
                 return Response.ok(result).build();
@@ -43,12 +59,32 @@ public class ManagementResource {
         }
     }
 
+    /**
+     * Executes the operation against all instances and sends the result of each instance as a server sent event as
+     * soon as it's available. The data of each event is the base64 encoded model node with the name of the instance
+     * as key and the result as value.
+     */
+    @POST
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public Multi<String> stream(@HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream inputStream) {
+        try {
+            ModelNode modelNode = readOperation(contentType, inputStream);
+            Operation operation = Operation.Factory.create(modelNode);
+            return instances.stream(operation).map(ModelNodeUtils::base64);
+        } catch (IOException e) {
+            return Multi.createFrom().failure(new ManagementException(
+                    "Unable to execute operation: " + e.getMessage(), e));
+        }
+    }
+
     @POST
     @Path("/{name}")
-    public Response executeSingle(@PathParam("name") String name, InputStream inputStream) {
+    public Response executeSingle(@PathParam("name") String name,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType, InputStream inputStream) {
         if (instances.hasInstance(name)) {
             try {
-                ModelNode modelNode = ModelNode.fromBase64(inputStream);
+                ModelNode modelNode = readOperation(contentType, inputStream);
                 Operation operation = Operation.Factory.create(modelNode);
                 ModelNode result = instances.executeSingle(name, operation);
                 if (result != null) {
@@ -63,4 +99,12 @@ public class ManagementResource {
             return Response.status(Status.NOT_FOUND).entity("Instance " + name + " not found").build();
         }
     }
+
+    private ModelNode readOperation(String contentType, InputStream inputStream) throws IOException {
+        if (contentType != null && isBinary(MediaType.valueOf(contentType))) {
+            return ModelNode.fromStream(inputStream);
+        } else {
+            return ModelNode.fromBase64(inputStream);
+        }
+    }
 }
@@ -14,10 +14,11 @@ import javax.ws.rs.ext.Provider;
 
 import org.jboss.dmr.ModelNode;
 
+import static org.wildfly.halos.proxy.ManagementResource.DMR_BINARY;
 import static org.wildfly.halos.proxy.ManagementResource.DMR_ENCODED;
 
 @Provider
-@Produces(DMR_ENCODED)
+@Produces({DMR_BINARY, DMR_ENCODED})
 public class ModelNodeMessageBodyWriter implements MessageBodyWriter<ModelNode> {
 
     @Override
@@ -29,6 +30,10 @@ public class ModelNodeMessageBodyWriter implements MessageBodyWriter<ModelNode>
     public void writeTo(ModelNode modelNode, Class<?> aClass, Type type, Annotation[] annotations, MediaType mediaType,
             MultivaluedMap<String, Object> multivaluedMap, OutputStream outputStream)
             throws IOException, WebApplicationException {
-        modelNode.writeBase64(outputStream);
+        if (ManagementResource.isBinary(mediaType)) {
+            modelNode.writeExternal(outputStream);
+        } else {
+            modelNode.writeBase64(outputStream);
+        }
     }
 }
@@ -0,0 +1,251 @@
+package org.wildfly.halos.proxy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.dmr.ModelNode;
+
+import static java.util.Arrays.asList;
+import static org.jboss.as.controller.client.helpers.ClientConstants.*;
+
+/**
+ * Caches the results of read-only operations per instance.
+ * <p>
+ * Entries are keyed by instance name and normalized operation (address, name, parameters and headers). They expire
+ * after a configurable TTL and the least recently used entries are evicted once the cache reaches its maximum size.
+ * Write operations invalidate all entries of the instance, whose address is a prefix of the written address or vice
+ * versa. Reads which overlap with a write are only dropped if the write targets the same instance.
+ * <p>
+ * Operations which include runtime attributes are not cached, since runtime values change without any write
+ * operation. This includes {@code read-attribute} and {@code read-attribute-group}, which always return runtime
+ * values.
+ */
+@ApplicationScoped
+class OperationCache {
+
+    private static final String INCLUDE_RUNTIME = "include-runtime";
+    private static final String QUERY = "query";
+    private static final Set<String> READ_ONLY_OPERATIONS = new HashSet<>(asList(
+            "read-attribute",
+            "read-attribute-group",
+            "read-attribute-group-names",
+            "read-children-names",
+            "read-children-resources",
+            "read-children-types",
+            "read-operation-description",
+            "read-operation-names",
+            "read-resource",
+            "read-resource-description",
+            QUERY));
+    private static final Set<String> RUNTIME_OPERATIONS = new HashSet<>(asList(
+            "read-attribute",
+            "read-attribute-group"));
+
+    /** @return whether the operation only reads data and can be cached */
+    static boolean isReadOnly(ModelNode operation) {
+        String name = operation.get(OP).asString();
+        if (COMPOSITE.equals(name)) {
+            ModelNode steps = operation.get(STEPS);
+            if (!steps.isDefined()) {
+                return false;
+            }
+            for (ModelNode step : steps.asList()) {
+                if (!isReadOnly(step)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return READ_ONLY_OPERATIONS.contains(name);
+    }
+
+    private final boolean enabled;
+    private final long ttl;
+    private final int maxSize;
+    private final LinkedHashMap<OperationKey, Entry> entries;
+    private final Map<String, Long> generations;
+    private long generation;
+    private long cleared;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    @Inject
+    OperationCache(@ConfigProperty(name = "halos.proxy.cache.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "halos.proxy.cache.ttl", defaultValue = "60000") long ttl,
+            @ConfigProperty(name = "halos.proxy.cache.max-size", defaultValue = "1000") int maxSize) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+        this.generations = new HashMap<>();
+        this.entries = new LinkedHashMap<OperationKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<OperationKey, Entry> eldest) {
+                if (size() > OperationCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // ------------------------------------------------------ read
+
+    /** @return whether the result of the operation can be cached */
+    boolean cacheable(ModelNode operation) {
+        return enabled && isReadOnly(operation) && !includesRuntime(operation);
+    }
+
+    /**
+     * Returns a token which has to be passed to {@link #put(OperationKey, ModelNode, long)}. Results of reads
+     * which overlap with a write to the same instance are not cached.
+     */
+    synchronized long token(String instance) {
+        return generation(instance);
+    }
+
+    /** @return a copy of the cached result or {@code null} if there's no valid entry */
+    synchronized ModelNode get(OperationKey key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.timestamp <= ttl) {
+                hits++;
+                return entry.result.clone();
+            } else {
+                entries.remove(key);
+                expirations++;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(OperationKey key, ModelNode result, long token) {
+        if (token == generation(key.instance) && SUCCESS.equals(result.get(OUTCOME).asString())) {
+            entries.put(key, new Entry(result.clone(), System.currentTimeMillis()));
+        }
+    }
+
+    // ------------------------------------------------------ invalidate
+
+    /** Invalidates all entries of the instance which are affected by the specified write operation. */
+    synchronized void invalidate(String instance, ModelNode operation) {
+        generations.put(instance, ++generation);
+        List<List<String>> addresses = new ArrayList<>();
+        collectAddresses(operation, addresses);
+        for (Iterator<OperationKey> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            OperationKey key = iterator.next();
+            if (key.instance.equals(instance)) {
+                for (List<String> address : addresses) {
+                    if (overlaps(key.address, address)) {
+                        iterator.remove();
+                        invalidations++;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Invalidates all entries of the instance. */
+    synchronized void invalidate(String instance) {
+        generations.put(instance, ++generation);
+        for (Iterator<OperationKey> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().instance.equals(instance)) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        generations.clear();
+        cleared = ++generation;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    // ------------------------------------------------------ statistics
+
+    synchronized CacheStatistics statistics() {
+        CacheStatistics statistics = new CacheStatistics();
+        statistics.enabled = enabled;
+        statistics.size = entries.size();
+        statistics.maxSize = maxSize;
+        statistics.ttl = ttl;
+        statistics.hits = hits;
+        statistics.misses = misses;
+        statistics.evictions = evictions;
+        statistics.expirations = expirations;
+        statistics.invalidations = invalidations;
+        long requests = hits + misses;
+        statistics.hitRate = requests == 0 ? 0 : (double) hits / requests;
+        return statistics;
+    }
+
+    // ------------------------------------------------------ internals
+
+    /** @return the generation of the last write to the instance or of the last clear, whatever happened last */
+    private long generation(String instance) {
+        return Math.max(generations.getOrDefault(instance, 0L), cleared);
+    }
+
+    private boolean includesRuntime(ModelNode operation) {
+        if (COMPOSITE.equals(operation.get(OP).asString())) {
+            for (ModelNode step : operation.get(STEPS).asList()) {
+                if (includesRuntime(step)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return RUNTIME_OPERATIONS.contains(operation.get(OP).asString())
+                || operation.hasDefined(INCLUDE_RUNTIME) && operation.get(INCLUDE_RUNTIME).asBoolean();
+    }
+
+    private void collectAddresses(ModelNode operation, List<List<String>> addresses) {
+        if (COMPOSITE.equals(operation.get(OP).asString()) && operation.hasDefined(STEPS)) {
+            for (ModelNode step : operation.get(STEPS).asList()) {
+                collectAddresses(step, addresses);
+            }
+        } else {
+            addresses.add(OperationKey.segments(operation));
+        }
+    }
+
+    private static boolean overlaps(List<String> a, List<String> b) {
+        int length = Math.min(a.size(), b.size());
+        for (int i = 0; i < length; i++) {
+            if (!a.get(i).equals(b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------ inner classes
+
+    private static class Entry {
+
+        final ModelNode result;
+        final long timestamp;
+
+        Entry(ModelNode result, long timestamp) {
+            this.result = result;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.wildfly.halos.proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+
+import static org.jboss.as.controller.client.helpers.ClientConstants.OP;
+import static org.jboss.as.controller.client.helpers.ClientConstants.OP_ADDR;
+
+/**
+ * Identifies an operation executed against an instance by its normalized address, name and parameters.
+ * <p>
+ * The parameters include the operation headers. Operations which run with different roles ({@code roles} header)
+ * might see different results and must not share a key.
+ */
+class OperationKey {
+
+    static List<String> segments(ModelNode operation) {
+        if (!operation.hasDefined(OP_ADDR) || operation.get(OP_ADDR).getType() != ModelType.LIST) {
+            return Collections.emptyList();
+        }
+        ModelNode address = operation.get(OP_ADDR);
+        List<String> segments = new ArrayList<>();
+        for (Property property : address.asPropertyList()) {
+            segments.add(property.getName() + "=" + property.getValue().asString());
+        }
+        return segments;
+    }
+
+    final String instance;
+    final List<String> address;
+    final String name;
+    final ModelNode parameters;
+    private final int hashCode;
+
+    OperationKey(String instance, ModelNode operation) {
+        this.instance = instance;
+        this.address = segments(operation);
+        this.name = operation.get(OP).asString();
+        this.parameters = operation.clone();
+        this.parameters.remove(OP);
+        this.parameters.remove(OP_ADDR);
+        this.hashCode = Objects.hash(instance, address, name, parameters);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        OperationKey that = (OperationKey) o;
+        return hashCode == that.hashCode &&
+                instance.equals(that.instance) &&
+                address.equals(that.address) &&
+                name.equals(that.name) &&
+                parameters.equals(that.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%s:/%s", name, instance, String.join("/", address));
+    }
+}
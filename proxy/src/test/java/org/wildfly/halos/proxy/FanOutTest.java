@@ -0,0 +1,96 @@
+package org.wildfly.halos.proxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FanOutTest {
+
+    private static final String TIMED_OUT = "timed-out";
+
+    private FanOut fanOut;
+
+    @AfterEach
+    void tearDown() {
+        if (fanOut != null) {
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    void result() {
+        fanOut = new FanOut("test", 2, 1_000);
+        assertEquals("ok", fanOut.submit(() -> "ok", () -> TIMED_OUT, Throwable::getMessage).join());
+    }
+
+    @Test
+    void deadlineStartsWhenTaskRuns() {
+        // three tasks of 200 ms on one thread: the last one starts after 400 ms, but must not time out
+        fanOut = new FanOut("test", 1, 300);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int index = i;
+            futures.add(fanOut.submit(() -> {
+                Thread.sleep(200);
+                return "task-" + index;
+            }, () -> TIMED_OUT, Throwable::getMessage));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals("task-" + i, futures.get(i).join());
+        }
+    }
+
+    @Test
+    void timeout() throws InterruptedException {
+        fanOut = new FanOut("test", 1, 100);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> future = fanOut.submit(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "late";
+        }, () -> TIMED_OUT, Throwable::getMessage);
+
+        assertEquals(TIMED_OUT, future.join());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS), "Timed out task not interrupted");
+    }
+
+    @Test
+    void error() {
+        fanOut = new FanOut("test", 1, 10_000);
+        long start = System.nanoTime();
+        CompletableFuture<String> future = fanOut.submit(() -> {
+            throw new IllegalStateException("boom");
+        }, () -> TIMED_OUT, Throwable::getMessage);
+
+        assertEquals("boom", future.join());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000,
+                "Error reported as timeout");
+    }
+
+    @Test
+    void noTimeoutAfterCompletion() throws InterruptedException {
+        fanOut = new FanOut("test", 1, 100);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        CompletableFuture<String> future = fanOut.submit(() -> "fast", () -> {
+            timedOut.set(true);
+            return TIMED_OUT;
+        }, Throwable::getMessage);
+
+        assertEquals("fast", future.join());
+        Thread.sleep(300);
+        assertTrue(!timedOut.get(), "Deadline not cancelled");
+    }
+}
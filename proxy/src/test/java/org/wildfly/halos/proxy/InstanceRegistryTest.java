@@ -0,0 +1,111 @@
+package org.wildfly.halos.proxy;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.wildfly.halos.proxy.InstanceRegistry.Connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Verifies the registry under contention: concurrent writers and readers which must always see sorted snapshots. */
+public class InstanceRegistryTest {
+
+    private static final int INSTANCES = 5_000;
+    private static final int WRITERS = 4;
+    private static final int READERS = 8;
+
+    @Test
+    void putGetRemove() {
+        InstanceRegistry registry = new InstanceRegistry();
+        assertTrue(registry.isEmpty());
+
+        assertNull(registry.put(instance(1), null));
+        assertNull(registry.put(instance(0), null));
+        assertNotNull(registry.put(instance(1), null));
+        assertEquals(2, registry.snapshot().size());
+        assertEquals("wf0", registry.snapshot().get(0).instance.name);
+        assertTrue(registry.contains("wf1"));
+
+        assertNotNull(registry.remove("wf0"));
+        assertNull(registry.remove("wf0"));
+        assertNull(registry.get("wf0"));
+        assertEquals(1, registry.instances().size());
+    }
+
+    @Test
+    void contention() throws InterruptedException {
+        InstanceRegistry registry = new InstanceRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch writers = new CountDownLatch(WRITERS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean unsorted = new AtomicBoolean(false);
+        AtomicLong snapshots = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            int offset = w;
+            executor.execute(() -> {
+                for (int i = offset; i < INSTANCES; i += WRITERS) {
+                    registry.put(instance(i), null);
+                    // remove and re-add every tenth instance to exercise both paths
+                    if (i % 10 == 0) {
+                        registry.remove(instance(i).name);
+                        registry.put(instance(i), null);
+                    }
+                }
+                writers.countDown();
+            });
+        }
+        for (int r = 0; r < READERS; r++) {
+            int seed = r;
+            executor.execute(() -> {
+                int i = seed;
+                try {
+                    while (running.get()) {
+                        registry.get(instance(i++ % INSTANCES).name);
+                        if (i % 100 == 0) {
+                            List<Connection> snapshot = registry.snapshot();
+                            assertTrue(snapshot.size() <= INSTANCES);
+                            for (int j = 1; j < snapshot.size(); j++) {
+                                if (snapshot.get(j - 1).compareTo(snapshot.get(j)) >= 0) {
+                                    unsorted.set(true);
+                                }
+                            }
+                            snapshots.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+        }
+
+        assertTrue(writers.await(1, TimeUnit.MINUTES));
+        running.set(false);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertNull(failure.get(), () -> "Reader failed: " + failure.get());
+        assertTrue(snapshots.get() > 0, "No snapshot taken");
+        assertFalse(unsorted.get(), "Snapshot not sorted");
+        assertEquals(INSTANCES, registry.snapshot().size());
+        for (int i = 0; i < INSTANCES; i++) {
+            assertNotNull(registry.get(instance(i).name));
+        }
+    }
+
+    private static Instance instance(int index) {
+        return new Instance("wf" + index, "localhost", 9990 + index, "admin", "admin");
+    }
+}
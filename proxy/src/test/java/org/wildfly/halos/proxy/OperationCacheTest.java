@@ -0,0 +1,93 @@
+package org.wildfly.halos.proxy;
+
+import java.util.Optional;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.Test;
+
+import static org.jboss.as.controller.client.helpers.ClientConstants.*;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class OperationCacheTest {
+
+    @Test
+    void rolesAreDistinct() {
+        OperationCache cache = new OperationCache(true, 60_000, 100);
+        OperationKey monitor = new OperationKey("wf0", readResource("Monitor"));
+        OperationKey administrator = new OperationKey("wf0", readResource("Administrator"));
+        assertNotEquals(monitor, administrator);
+
+        cache.put(monitor, success(), cache.token("wf0"));
+        assertNotNull(cache.get(monitor));
+        assertNull(cache.get(administrator));
+    }
+
+    @Test
+    void writeToOtherInstance() {
+        OperationCache cache = new OperationCache(true, 60_000, 100);
+        OperationKey key = new OperationKey("wf0", readResource(null));
+        long token = cache.token("wf0");
+        cache.invalidate("wf1", readResource(null));
+        cache.put(key, success(), token);
+        assertNotNull(cache.get(key));
+    }
+
+    @Test
+    void writeToSameInstance() {
+        OperationCache cache = new OperationCache(true, 60_000, 100);
+        OperationKey key = new OperationKey("wf0", readResource(null));
+        long token = cache.token("wf0");
+        cache.invalidate("wf0", readResource(null));
+        cache.put(key, success(), token);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    void reRegisterSameInstance() {
+        OperationCache cache = new OperationCache(true, 60_000, 100);
+        Instances instances = new Instances(cache, new DescriptionCache(false, 100, Optional.empty()), 1, 1_000);
+        try {
+            instances.register(new Instance("wf0", "localhost", 9990, "admin", "admin"));
+            OperationKey key = new OperationKey("wf0", readResource(null));
+            long token = cache.token("wf0");
+            cache.put(key, success(), token);
+            assertNotNull(cache.get(key));
+
+            instances.register(new Instance("wf0", "localhost", 9991, "admin", "admin"));
+            assertNull(cache.get(key));
+            cache.put(key, success(), token);
+            assertNull(cache.get(key));
+        } finally {
+            instances.shutdown();
+        }
+    }
+
+    @Test
+    void clear() {
+        OperationCache cache = new OperationCache(true, 60_000, 100);
+        OperationKey key = new OperationKey("wf0", readResource(null));
+        long token = cache.token("wf0");
+        cache.clear();
+        cache.put(key, success(), token);
+        assertNull(cache.get(key));
+    }
+
+    private static ModelNode readResource(String role) {
+        ModelNode operation = new ModelNode();
+        operation.get(OP).set("read-resource");
+        operation.get(OP_ADDR).add("subsystem", "logging");
+        if (role != null) {
+            operation.get(OPERATION_HEADERS).get("roles").set(role);
+        }
+        return operation;
+    }
+
+    private static ModelNode success() {
+        ModelNode result = new ModelNode();
+        result.get(OUTCOME).set(SUCCESS);
+        result.get(RESULT).setEmptyObject();
+        return result;
+    }
+}